@@ -0,0 +1,146 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures typical access patterns on large {@link Report} instances.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ReportBenchmark {
+
+    /**
+     * Number of violations in the synthetic report.
+     */
+    @Param({"1000", "100000", "1000000"})
+    private int violations;
+
+    /**
+     * The synthetic report.
+     */
+    private Report report = null;
+
+    /**
+     * A file name that exists in the synthetic report.
+     */
+    private String fileName = null;
+
+    @Setup
+    public void setUp() {
+        this.report = Reports.createReport(this.violations);
+        this.fileName = this.report.getRuleViolations().get(this.violations / 2).getFileName();
+        this.report.getIndex().countByRule();
+    }
+
+    /**
+     * Builds a report from scratch, including the string de-duplication.
+     */
+    @Benchmark
+    public Report buildReport() {
+        return Reports.createReport(this.violations);
+    }
+
+    /**
+     * Iterates over all violations of the report.
+     */
+    @Benchmark
+    public void iterateViolations(Blackhole blackhole) {
+        for (RuleViolation violation : this.report.getRuleViolations()) {
+            blackhole.consume(violation.getBeginLine());
+        }
+    }
+
+    /**
+     * Scans all violations for those of a single file.
+     */
+    @Benchmark
+    public int scanByFile() {
+        int count = 0;
+        for (RuleViolation violation : this.report.getRuleViolations()) {
+            if (violation.getFileName().equals(this.fileName)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Queries the violations of a single file through the report index.
+     */
+    @Benchmark
+    public int indexByFile() {
+        return this.report.getRuleViolationsByFile(this.fileName).size();
+    }
+
+    /**
+     * Builds a new index and counts the violations per rule.
+     */
+    @Benchmark
+    public Object countByRule() {
+        return new ReportIndex(this.report.getRuleViolations()).countByRule();
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+/**
+ * Factory for synthetic phpmd reports used by the benchmarks. The generated
+ * reports follow the shape of real reports, with several violations per file
+ * and only a few distinct rules and packages.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public final class Reports {
+
+    /**
+     * Number of violations per synthetic file.
+     */
+    private static final int VIOLATIONS_PER_FILE = 8;
+
+    /**
+     * Rules used for the synthetic violations.
+     */
+    private static final String[] RULES = {
+        "CyclomaticComplexity",
+        "NPathComplexity",
+        "ExcessiveMethodLength",
+        "UnusedFormalParameter",
+        "UnusedLocalVariable",
+        "ShortVariable"
+    };
+
+    private Reports() {
+    }
+
+    /**
+     * Creates a phpmd xml report with the given number of violations.
+     *
+     * @param violations The number of violations.
+     *
+     * @return The xml report.
+     */
+    public static String createXml(int violations) {
+        StringBuilder xml = new StringBuilder(violations * 320);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+        xml.append("<pmd version=\"0.2.6\" timestamp=\"2010-06-26T20:16:26+02:00\">\n");
+        for (int i = 0; i < violations; ++i) {
+            if (i % VIOLATIONS_PER_FILE == 0) {
+                if (i > 0) {
+                    xml.append("  </file>\n");
+                }
+                xml.append("  <file name=\"").append(fileName(i)).append("\">\n");
+            }
+            xml.append("    <violation beginline=\"").append(beginLine(i))
+               .append("\" endline=\"").append(beginLine(i) + 12)
+               .append("\" rule=\"").append(rule(i))
+               .append("\" ruleset=\"Code Size Rules\" package=\"").append(packageName(i))
+               .append("\" class=\"").append(className(i))
+               .append("\" method=\"method").append(i % VIOLATIONS_PER_FILE)
+               .append("\" priority=\"3\">\n      ")
+               .append(description(i))
+               .append("\n    </violation>\n");
+        }
+        if (violations > 0) {
+            xml.append("  </file>\n");
+        }
+        xml.append("</pmd>\n");
+
+        return xml.toString();
+    }
+
+    /**
+     * Creates a report with the given number of violations.
+     *
+     * @param violations The number of violations.
+     *
+     * @return The report.
+     */
+    public static Report createReport(int violations) {
+        Report report = new Report();
+        for (int i = 0; i < violations; ++i) {
+            RuleViolation rv = new RuleViolation();
+            rv.setFileName(fileName(i));
+            rv.setPackageName(packageName(i));
+            rv.setClassName(className(i));
+            rv.setFunctionName("");
+            rv.setMethodName("method" + (i % VIOLATIONS_PER_FILE));
+            rv.setBeginLine(beginLine(i));
+            rv.setEndLine(beginLine(i) + 12);
+            rv.setRule(rule(i));
+            rv.setDescription(description(i));
+
+            report.addRuleViolation(rv);
+        }
+        return report;
+    }
+
+    private static String fileName(int i) {
+        int file = i / VIOLATIONS_PER_FILE;
+        return "/var/www/project/src/Package" + (file % 100) + "/Class" + file + ".php";
+    }
+
+    private static String packageName(int i) {
+        return "Package" + ((i / VIOLATIONS_PER_FILE) % 100);
+    }
+
+    private static String className(int i) {
+        return "Class" + (i / VIOLATIONS_PER_FILE);
+    }
+
+    private static String rule(int i) {
+        return RULES[i % RULES.length];
+    }
+
+    private static int beginLine(int i) {
+        return 10 + (i % VIOLATIONS_PER_FILE) * 20;
+    }
+
+    private static String description(int i) {
+        return "The method method" + (i % VIOLATIONS_PER_FILE) + "() has a Cyclomatic Complexity of " + (10 + i % 7) + ".";
+    }
+}
@@ -0,0 +1,537 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Set of known rule violations that should not be reported again. Adopting
+ * phpmd on legacy code this way only reports violations that were introduced
+ * after the baseline was created.
+ *
+ * Each violation is identified by a 64 bit fingerprint of its rule, its file,
+ * its class and method or function and its normalized description. Line
+ * numbers are not part of the fingerprint, so that a known violation is still
+ * recognized when the code around it was moved. The normalization ignores the
+ * character case, the amount of white space and the concrete values of
+ * numbers, so that a known violation is also recognized when the measured
+ * value in its description changes. The same fingerprint may occur more than
+ * once, a baseline only suppresses as many violations per fingerprint as it
+ * contains.
+ *
+ * The fingerprints are stored in an open addressing hash table of primitive
+ * longs, so that filtering a report takes linear time and a baseline with
+ * thousands of violations needs only a few bytes per entry.
+ *
+ * <pre>
+ * baseline := magic version count (fingerprint occurrences)*
+ * magic    := 'P' 'M' 'D' 'B'
+ * version  := byte
+ * count    := int
+ * </pre>
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class Baseline {
+
+    /**
+     * Magic bytes at the beginning of each stored baseline.
+     */
+    private static final byte[] MAGIC = {'P', 'M', 'D', 'B'};
+
+    /**
+     * Version of the binary format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the stream buffers.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Offset basis and prime of the 64 bit FNV-1a hash.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L,
+                              FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Canonical and absolute path of the base directory with a trailing
+     * slash, or <b>null</b> when file names are used as they are. phpmd
+     * reports canonical file names, the absolute path still matches file
+     * names that were passed through as configured.
+     */
+    private String basePath = null,
+                   absoluteBasePath = null;
+
+    /**
+     * Number of occurrences of each known fingerprint.
+     */
+    private FingerprintTable fingerprints = new FingerprintTable(16);
+
+    /**
+     * Creates an empty baseline that uses the file names of the violations as
+     * they are.
+     */
+    public Baseline() {
+    }
+
+    /**
+     * Creates an empty baseline that uses file names relative to the given
+     * directory, so that the baseline can be used in different checkouts of
+     * the same project.
+     *
+     * @param baseDirectory The root directory of the analyzed project.
+     */
+    public Baseline(File baseDirectory) {
+        this.basePath = this.toBasePath(this.getCanonicalPath(baseDirectory));
+        this.absoluteBasePath = this.toBasePath(baseDirectory.getAbsolutePath());
+    }
+
+    /**
+     * Adds all violations of the given report to this baseline.
+     *
+     * @param report The report with the known violations.
+     */
+    public void add(Report report) {
+        for (RuleViolation violation : report.getRuleViolations()) {
+            this.add(violation);
+        }
+    }
+
+    /**
+     * Adds a single known violation to this baseline.
+     *
+     * @param violation The known violation.
+     */
+    public synchronized void add(RuleViolation violation) {
+        this.fingerprints.add(this.fingerprint(violation), 1);
+    }
+
+    /**
+     * Tests if this baseline contains a violation with the same fingerprint as
+     * the given violation.
+     *
+     * @param violation The tested violation.
+     *
+     * @return <b>true</b> when the violation is known.
+     */
+    public synchronized boolean contains(RuleViolation violation) {
+        return this.fingerprints.count(this.fingerprint(violation)) > 0;
+    }
+
+    /**
+     * Returns the number of violations in this baseline.
+     *
+     * @return The number of known violations.
+     */
+    public synchronized int size() {
+        return this.fingerprints.total;
+    }
+
+    /**
+     * Returns a new report with those violations of the given report that are
+     * not part of this baseline.
+     *
+     * @param report The report to filter.
+     *
+     * @return A report with the new violations.
+     */
+    public Report filter(Report report) {
+        Report result = new Report();
+        ViolationListener filter = this.createFilter(result);
+        for (RuleViolation violation : report.getRuleViolations()) {
+            filter.ruleViolation(violation);
+        }
+        for (String fileName : report.getTimedOutFiles()) {
+            result.addTimedOutFile(fileName);
+        }
+        if (!report.isComplete()) {
+            result.markIncomplete();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a listener that passes only those violations to the given
+     * listener that are not part of this baseline. The returned listener
+     * suppresses each fingerprint as often as it occurs in the baseline, so a
+     * new listener must be used for each run.
+     *
+     * @param listener The listener for the new violations.
+     *
+     * @return A filtering listener.
+     */
+    public ViolationListener createFilter(final ViolationListener listener) {
+        final FingerprintTable remaining;
+        synchronized (this) {
+            remaining = this.fingerprints.copy();
+        }
+        return new ViolationListener() {
+            public void ruleViolation(RuleViolation violation) {
+                boolean known;
+                synchronized (remaining) {
+                    known = remaining.decrement(fingerprint(violation));
+                }
+                if (!known) {
+                    listener.ruleViolation(violation);
+                }
+            }
+        };
+    }
+
+    /**
+     * Calculates the fingerprint of the given violation.
+     *
+     * @param violation The context violation.
+     *
+     * @return The non zero fingerprint.
+     */
+    public long fingerprint(RuleViolation violation) {
+        String method = violation.getMethodName();
+        if (method == null || method.length() == 0) {
+            method = violation.getFunctionName();
+        }
+
+        long hash = FNV_OFFSET;
+        hash = this.hash(hash, violation.getRule());
+        hash = this.hashFileName(hash, violation.getFileName());
+        hash = this.hash(hash, violation.getClassName());
+        hash = this.hash(hash, method);
+        hash = this.hashDescription(hash, violation.getDescription());
+
+        hash = this.mix(hash);
+        return (hash == 0 ? 1 : hash);
+    }
+
+    /**
+     * Reads a baseline file and adds its violations to this baseline.
+     *
+     * @param file The baseline file.
+     *
+     * @throws IOException If the file cannot be read or is no baseline.
+     */
+    public void read(File file) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        try {
+            this.read(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads a stored baseline from the given stream and adds its violations to
+     * this baseline. The stream will not be closed.
+     *
+     * @param stream The source stream.
+     *
+     * @throws IOException If the stream cannot be read or is no baseline.
+     */
+    public synchronized void read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("The stream does not contain a baseline.");
+            }
+        }
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported baseline format version " + version + ".");
+        }
+
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i) {
+            long fingerprint = in.readLong();
+            int occurrences = in.readInt();
+            if (fingerprint == 0 || occurrences <= 0) {
+                throw new IOException("Invalid baseline entry " + i + ".");
+            }
+            this.fingerprints.add(fingerprint, occurrences);
+        }
+    }
+
+    /**
+     * Writes this baseline into the given file.
+     *
+     * @param file The baseline file.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(File file) throws IOException {
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            this.write(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Writes this baseline to the given stream. The stream will be flushed
+     * but not closed.
+     *
+     * @param stream The target stream.
+     *
+     * @throws IOException If an error occured while writing to the stream.
+     */
+    public synchronized void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        out.write(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+
+        FingerprintTable table = this.fingerprints;
+        out.writeInt(table.size);
+        for (int i = 0; i < table.keys.length; ++i) {
+            if (table.keys[i] != 0) {
+                out.writeLong(table.keys[i]);
+                out.writeInt(table.counts[i]);
+            }
+        }
+        out.flush();
+    }
+
+    private long hashFileName(long hash, String fileName) {
+        if (fileName == null) {
+            return this.hash(hash, null);
+        }
+        String path = fileName.replace('\\', '/');
+        if (this.basePath != null && path.startsWith(this.basePath)) {
+            path = path.substring(this.basePath.length());
+        } else if (this.absoluteBasePath != null && path.startsWith(this.absoluteBasePath)) {
+            path = path.substring(this.absoluteBasePath.length());
+        }
+        return this.hash(hash, path);
+    }
+
+    private String toBasePath(String path) {
+        path = path.replace('\\', '/');
+        if (!path.endsWith("/")) {
+            path += "/";
+        }
+        return path;
+    }
+
+    private String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Hashes the given string followed by a separator.
+     */
+    private long hash(long hash, String string) {
+        if (string != null) {
+            for (int i = 0, n = string.length(); i < n; ++i) {
+                hash = this.hash(hash, string.charAt(i));
+            }
+        }
+        return this.hash(hash, '\0');
+    }
+
+    /**
+     * Hashes the normalized form of the given description, without creating
+     * the normalized string. The description is lower cased, white space runs
+     * are collapsed into a single blank and digit runs into a single '#'.
+     */
+    private long hashDescription(long hash, String description) {
+        if (description != null) {
+            boolean started = false, space = false, digits = false;
+            for (int i = 0, n = description.length(); i < n; ++i) {
+                char c = description.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    space = started;
+                    digits = false;
+                    continue;
+                }
+                if (space) {
+                    hash = this.hash(hash, ' ');
+                    space = false;
+                }
+                if (Character.isDigit(c)) {
+                    if (!digits) {
+                        hash = this.hash(hash, '#');
+                        digits = true;
+                    }
+                } else {
+                    hash = this.hash(hash, Character.toLowerCase(c));
+                    digits = false;
+                }
+                started = true;
+            }
+        }
+        return this.hash(hash, '\0');
+    }
+
+    private long hash(long hash, char c) {
+        hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+        return (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+
+    /**
+     * Final avalanche step, so that the low bits used by the hash table depend
+     * on all bits of the FNV hash.
+     */
+    private long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Open addressing hash table that maps non zero fingerprints to their
+     * number of occurrences. The key zero marks an empty slot.
+     */
+    private static class FingerprintTable {
+
+        private long[] keys;
+
+        private int[] counts;
+
+        /**
+         * Number of distinct fingerprints.
+         */
+        private int size = 0;
+
+        /**
+         * Sum of all occurrences.
+         */
+        private int total = 0;
+
+        private FingerprintTable(int capacity) {
+            this.keys = new long[capacity];
+            this.counts = new int[capacity];
+        }
+
+        private void add(long key, int count) {
+            int slot = this.find(key);
+            if (this.keys[slot] == 0) {
+                if ((this.size + 1) * 2 > this.keys.length) {
+                    this.resize(this.keys.length * 2);
+                    slot = this.find(key);
+                }
+                this.keys[slot] = key;
+                ++this.size;
+            }
+            this.counts[slot] += count;
+            this.total += count;
+        }
+
+        private int count(long key) {
+            int slot = this.find(key);
+            return (this.keys[slot] == 0 ? 0 : this.counts[slot]);
+        }
+
+        /**
+         * Decrements the occurrences of the given fingerprint.
+         *
+         * @return <b>false</b> when no occurrence was left.
+         */
+        private boolean decrement(long key) {
+            int slot = this.find(key);
+            if (this.keys[slot] == 0 || this.counts[slot] == 0) {
+                return false;
+            }
+            --this.counts[slot];
+            --this.total;
+            return true;
+        }
+
+        private FingerprintTable copy() {
+            FingerprintTable copy = new FingerprintTable(0);
+            copy.keys = this.keys.clone();
+            copy.counts = this.counts.clone();
+            copy.size = this.size;
+            copy.total = this.total;
+            return copy;
+        }
+
+        /**
+         * Returns the slot of the given key or the empty slot where it would
+         * be inserted.
+         */
+        private int find(long key) {
+            int mask = this.keys.length - 1;
+            int slot = (int) key & mask;
+            while (this.keys[slot] != 0 && this.keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = this.keys;
+            int[] oldCounts = this.counts;
+            this.keys = new long[capacity];
+            this.counts = new int[capacity];
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldKeys[i] != 0) {
+                    int slot = this.find(oldKeys[i]);
+                    this.keys[slot] = oldKeys[i];
+                    this.counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writes rule violations as a checkstyle xml report, as it is read by
+ * Jenkins and many other build servers.
+ *
+ * Consecutive violations of the same file are written into one file element.
+ * Violations with a priority of <b>1</b> or <b>2</b> get the severity
+ * <b>error</b>, a priority of <b>3</b> results in a <b>warning</b> and all
+ * lower priorities in <b>info</b>.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class CheckstyleReportWriter extends ReportWriter {
+
+    /**
+     * Name of the currently open file element or <b>null</b>.
+     */
+    private String fileName = null;
+
+    /**
+     * Constructs a new checkstyle writer for the given stream.
+     *
+     * @param stream The output stream.
+     */
+    public CheckstyleReportWriter(OutputStream stream) {
+        super(stream);
+    }
+
+    @Override
+    protected void writeHeader(Writer out) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<checkstyle version=\"4.3\">\n");
+    }
+
+    @Override
+    protected void writeViolation(Writer out, RuleViolation violation) throws IOException {
+        if (!violation.getFileName().equals(this.fileName)) {
+            if (this.fileName != null) {
+                out.write("  </file>\n");
+            }
+            this.fileName = violation.getFileName();
+
+            out.write("  <file name=\"");
+            this.writeEscaped(out, this.fileName);
+            out.write("\">\n");
+        }
+
+        out.write("    <error line=\"");
+        out.write(Integer.toString(violation.getBeginLine()));
+        out.write("\" severity=\"");
+        out.write(this.getSeverity(violation.getPriority()));
+        out.write("\" message=\"");
+        this.writeEscaped(out, violation.getDescription());
+        out.write("\" source=\"");
+        this.writeEscaped(out, this.getSource(violation));
+        out.write("\"/>\n");
+    }
+
+    @Override
+    protected void writeFooter(Writer out) throws IOException {
+        if (this.fileName != null) {
+            out.write("  </file>\n");
+        }
+        out.write("</checkstyle>\n");
+    }
+
+    private String getSeverity(int priority) {
+        if (priority == 1 || priority == 2) {
+            return "error";
+        } else if (priority == 3 || priority == 0) {
+            return "warning";
+        }
+        return "info";
+    }
+
+    /**
+     * Returns the checkstyle source of a violation, which is the rule name
+     * prefixed with the name of its rule set, when this one is known.
+     */
+    private String getSource(RuleViolation violation) {
+        if (violation.getRuleSet() == null || violation.getRuleSet().length() == 0) {
+            return "phpmd." + violation.getRule();
+        }
+        return "phpmd." + violation.getRuleSet().replace(' ', '_') + "." + violation.getRule();
+    }
+
+    /**
+     * Writes the given value escaped for use in a quoted xml attribute.
+     */
+    private void writeEscaped(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0, n = value.length(); i < n; ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                case '\n':
+                    out.write("&#10;");
+                    break;
+                case '\r':
+                    out.write("&#13;");
+                    break;
+                case '\t':
+                    out.write("&#9;");
+                    break;
+                default:
+                    if (c >= 0x20) {
+                        out.write(c);
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,716 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Report implementation that stores its violations in primitive columns
+ * instead of one object per violation. Line numbers and priorities are kept
+ * in int arrays and the repeating string properties, like file, class and
+ * rule, as ids of a report wide {@link StringDictionary}. Descriptions mostly
+ * differ between violations, so they are kept in a plain string column
+ * instead of the dictionary.
+ *
+ * The {@link RuleViolation} instances returned by this report are views that
+ * are created on demand. Changing such a view does not change this report.
+ * Sorting, grouping and counting work on the columns without creating views.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class ColumnarReport extends Report {
+
+    /**
+     * Initial capacity of the columns.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Column indexes of the string properties.
+     */
+    private static final int FILE = 0,
+                             PACKAGE = 1,
+                             CLASS = 2,
+                             FUNCTION = 3,
+                             METHOD = 4,
+                             RULE = 5,
+                             RULE_SET = 6,
+                             EXTERNAL_INFO_URL = 7,
+                             STRING_COLUMNS = 8;
+
+    /**
+     * Dictionary for the values of all string id columns.
+     */
+    private StringDictionary dictionary = new StringDictionary();
+
+    /**
+     * Dictionary ids of the string properties, one array per property.
+     */
+    private int[][] strings = new int[STRING_COLUMNS][INITIAL_CAPACITY];
+
+    /**
+     * Descriptions of the violations, which are not pooled.
+     */
+    private String[] descriptions = new String[INITIAL_CAPACITY];
+
+    private int[] beginLines = new int[INITIAL_CAPACITY];
+
+    private int[] endLines = new int[INITIAL_CAPACITY];
+
+    private int[] priorities = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of stored violations.
+     */
+    private int size = 0;
+
+    /**
+     * Lazily built secondary indexes, reset whenever a violation is added.
+     */
+    private ReportIndex index = null;
+
+    /**
+     * Adds the properties of the given violation to the columns of this
+     * report. The violation instance itself is not kept.
+     *
+     * @param violation The rule violation to add.
+     */
+    @Override
+    public synchronized void addRuleViolation(RuleViolation violation) {
+        if (this.size == this.beginLines.length) {
+            this.grow();
+        }
+
+        int i = this.size;
+        this.strings[FILE][i] = this.dictionary.add(violation.getFileName());
+        this.strings[PACKAGE][i] = this.dictionary.add(violation.getPackageName());
+        this.strings[CLASS][i] = this.dictionary.add(violation.getClassName());
+        this.strings[FUNCTION][i] = this.dictionary.add(violation.getFunctionName());
+        this.strings[METHOD][i] = this.dictionary.add(violation.getMethodName());
+        this.strings[RULE][i] = this.dictionary.add(violation.getRule());
+        this.strings[RULE_SET][i] = this.dictionary.add(violation.getRuleSet());
+        this.strings[EXTERNAL_INFO_URL][i] = this.dictionary.add(violation.getExternalInfoUrl());
+        this.descriptions[i] = violation.getDescription();
+        this.beginLines[i] = violation.getBeginLine();
+        this.endLines[i] = violation.getEndLine();
+        this.priorities[i] = violation.getPriority();
+
+        ++this.size;
+        this.index = null;
+    }
+
+    /**
+     * Removes all violations of the given file and compacts the columns.
+     *
+     * @param fileName The name of the source file.
+     *
+     * @return Views of the removed violations.
+     */
+    @Override
+    public synchronized List<RuleViolation> removeRuleViolations(String fileName) {
+        List<RuleViolation> removed = new ArrayList<RuleViolation>();
+
+        int id = this.dictionary.getId(fileName);
+        if (id <= 0) {
+            return removed;
+        }
+
+        int[] files = this.strings[FILE];
+        int target = 0;
+        for (int i = 0; i < this.size; ++i) {
+            if (files[i] == id) {
+                removed.add(this.getRuleViolation(i));
+                continue;
+            }
+            if (target != i) {
+                for (int column = 0; column < STRING_COLUMNS; ++column) {
+                    this.strings[column][target] = this.strings[column][i];
+                }
+                this.descriptions[target] = this.descriptions[i];
+                this.beginLines[target] = this.beginLines[i];
+                this.endLines[target] = this.endLines[i];
+                this.priorities[target] = this.priorities[i];
+            }
+            ++target;
+        }
+
+        if (!removed.isEmpty()) {
+            Arrays.fill(this.descriptions, target, this.size, null);
+            this.size = target;
+            this.index = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns a read only list of views on a copy of the violations of this
+     * report. The list is not affected by violations that are added or
+     * removed later, each call of <b>get()</b> creates a new view.
+     *
+     * @return The violations of this report.
+     */
+    @Override
+    public synchronized List<RuleViolation> getRuleViolations() {
+        return this.snapshot().new ViolationList();
+    }
+
+    /**
+     * Returns the number of violations in this report.
+     *
+     * @return The number of violations.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Creates a view on the violation at the given position.
+     *
+     * @param i Position of the violation in this report.
+     *
+     * @return A new rule violation instance.
+     */
+    public synchronized RuleViolation getRuleViolation(int i) {
+        this.check(i);
+
+        RuleViolation violation = new RuleViolation();
+        violation.setFileName(this.dictionary.get(this.strings[FILE][i]));
+        violation.setPackageName(this.dictionary.get(this.strings[PACKAGE][i]));
+        violation.setClassName(this.dictionary.get(this.strings[CLASS][i]));
+        violation.setFunctionName(this.dictionary.get(this.strings[FUNCTION][i]));
+        violation.setMethodName(this.dictionary.get(this.strings[METHOD][i]));
+        violation.setRule(this.dictionary.get(this.strings[RULE][i]));
+        violation.setRuleSet(this.dictionary.get(this.strings[RULE_SET][i]));
+        violation.setExternalInfoUrl(this.dictionary.get(this.strings[EXTERNAL_INFO_URL][i]));
+        violation.setDescription(this.descriptions[i]);
+        violation.setBeginLine(this.beginLines[i]);
+        violation.setEndLine(this.endLines[i]);
+        violation.setPriority(this.priorities[i]);
+
+        return violation;
+    }
+
+    public synchronized String getFileName(int i) {
+        this.check(i);
+        return this.dictionary.get(this.strings[FILE][i]);
+    }
+
+    public synchronized String getRule(int i) {
+        this.check(i);
+        return this.dictionary.get(this.strings[RULE][i]);
+    }
+
+    public synchronized int getBeginLine(int i) {
+        this.check(i);
+        return this.beginLines[i];
+    }
+
+    public synchronized int getEndLine(int i) {
+        this.check(i);
+        return this.endLines[i];
+    }
+
+    public synchronized int getPriority(int i) {
+        this.check(i);
+        return this.priorities[i];
+    }
+
+    /**
+     * Returns a columnar report with those violations whose priority value is
+     * less than or equal to the given minimum priority. Only the priority
+     * column is read to select the violations.
+     *
+     * @param minimum The minimum priority value.
+     *
+     * @return The filtered report.
+     */
+    @Override
+    public synchronized Report filter(int minimum) {
+        ColumnarReport report = new ColumnarReport();
+        for (int i = 0; i < this.size; ++i) {
+            if (this.priorities[i] <= minimum) {
+                report.addRuleViolation(this.getRuleViolation(i));
+            }
+        }
+        for (String fileName : this.getTimedOutFiles()) {
+            report.addTimedOutFile(fileName);
+        }
+        return report;
+    }
+
+    /**
+     * Returns the secondary indexes of this report. The index works on a copy
+     * of the columns taken on its first use, it groups the violations by the
+     * dictionary ids of the queried column and only creates views for the
+     * violations that a query returns.
+     *
+     * @return The indexes over the current violations.
+     */
+    @Override
+    public synchronized ReportIndex getIndex() {
+        if (this.index == null) {
+            this.index = this.snapshot().new ColumnarIndex();
+        }
+        return this.index;
+    }
+
+    /**
+     * Counts the violations of each rule.
+     *
+     * @return The number of violations per rule name, in the order in which
+     *         the rules occurred first.
+     */
+    public Map<String, Integer> countByRule() {
+        return this.count(RULE);
+    }
+
+    /**
+     * Counts the violations of each file.
+     *
+     * @return The number of violations per file name, in the order in which
+     *         the files occurred first.
+     */
+    public Map<String, Integer> countByFile() {
+        return this.count(FILE);
+    }
+
+    /**
+     * Counts the violations of each package.
+     *
+     * @return The number of violations per package name, in the order in
+     *         which the packages occurred first.
+     */
+    public Map<String, Integer> countByPackage() {
+        return this.count(PACKAGE);
+    }
+
+    /**
+     * Counts the violations of each priority.
+     *
+     * @return An array indexed by priority value, the index zero counts the
+     *         violations with an unknown priority.
+     */
+    public synchronized int[] countByPriority() {
+        int[] counts = new int[Priority.LOWEST_PRIORITY + 1];
+        for (int i = 0; i < this.size; ++i) {
+            int priority = this.priorities[i];
+            if (priority < 0 || priority > Priority.LOWEST_PRIORITY) {
+                priority = 0;
+            }
+            ++counts[priority];
+        }
+        return counts;
+    }
+
+    /**
+     * Groups the positions of all violations by their file. The positions of
+     * each group are in ascending order.
+     *
+     * @return The positions of the violations per file name, in the order in
+     *         which the files occurred first.
+     */
+    public synchronized Map<String, int[]> groupByFile() {
+        int[][] groups = this.groupIds(FILE);
+
+        int[] files = this.strings[FILE];
+        Map<String, int[]> result = new LinkedHashMap<String, int[]>();
+        for (int i = 0; i < this.size; ++i) {
+            if (groups[files[i]] != null) {
+                result.put(this.dictionary.get(files[i]), groups[files[i]]);
+                groups[files[i]] = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the positions of all violations sorted by file name, begin line
+     * and end line. Violations at the same location keep their order.
+     *
+     * @return The sorted positions.
+     */
+    public synchronized int[] sortByLocation() {
+        int[] ranks = this.rankIds(FILE);
+
+        int[] order = new int[this.size];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        this.sort(order, new int[order.length], 0, order.length, ranks);
+
+        return order;
+    }
+
+    /**
+     * Stable merge sort of violation positions, comparing the file rank, the
+     * begin line and the end line of the violations.
+     */
+    private void sort(int[] order, int[] buffer, int from, int to, int[] ranks) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        this.sort(order, buffer, from, middle, ranks);
+        this.sort(order, buffer, middle, to, ranks);
+        if (this.compare(order[middle - 1], order[middle], ranks) <= 0) {
+            return;
+        }
+
+        System.arraycopy(order, from, buffer, from, to - from);
+        for (int i = from, left = from, right = middle; i < to; ++i) {
+            if (right >= to || (left < middle && this.compare(buffer[left], buffer[right], ranks) <= 0)) {
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    private int compare(int a, int b, int[] ranks) {
+        int[] files = this.strings[FILE];
+        if (ranks[files[a]] != ranks[files[b]]) {
+            return (ranks[files[a]] < ranks[files[b]] ? -1 : 1);
+        }
+        if (this.beginLines[a] != this.beginLines[b]) {
+            return (this.beginLines[a] < this.beginLines[b] ? -1 : 1);
+        }
+        if (this.endLines[a] != this.endLines[b]) {
+            return (this.endLines[a] < this.endLines[b] ? -1 : 1);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the rank of each dictionary id in the sorted order of the
+     * distinct values of the given column. Only the distinct strings are
+     * compared, the violations themselves are never compared by string.
+     */
+    private int[] rankIds(int column) {
+        int[] counts = this.countIds(column);
+
+        List<String> values = new ArrayList<String>();
+        for (int id = 1; id < counts.length; ++id) {
+            if (counts[id] > 0) {
+                values.add(this.dictionary.get(id));
+            }
+        }
+        String[] sorted = values.toArray(new String[values.size()]);
+        Arrays.sort(sorted);
+
+        int[] ranks = new int[counts.length];
+        for (int i = 0; i < sorted.length; ++i) {
+            ranks[this.dictionary.getId(sorted[i])] = i + 1;
+        }
+        return ranks;
+    }
+
+    private synchronized Map<String, Integer> count(int column) {
+        int[] counts = this.countIds(column);
+        int[] ids = this.strings[column];
+
+        Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < this.size; ++i) {
+            if (counts[ids[i]] > 0) {
+                result.put(this.dictionary.get(ids[i]), counts[ids[i]]);
+                counts[ids[i]] = 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ascending positions of the violations for each dictionary
+     * id of the given column, or <b>null</b> for ids that do not occur.
+     */
+    private int[][] groupIds(int column) {
+        int[] counts = this.countIds(column);
+
+        int[][] groups = new int[counts.length][];
+        for (int id = 0; id < counts.length; ++id) {
+            if (counts[id] > 0) {
+                groups[id] = new int[counts[id]];
+                counts[id] = 0;
+            }
+        }
+
+        int[] ids = this.strings[column];
+        for (int i = 0; i < this.size; ++i) {
+            groups[ids[i]][counts[ids[i]]++] = i;
+        }
+        return groups;
+    }
+
+    private int[] countIds(int column) {
+        int[] counts = new int[this.dictionary.size()];
+        int[] ids = this.strings[column];
+        for (int i = 0; i < this.size; ++i) {
+            ++counts[ids[i]];
+        }
+        return counts;
+    }
+
+    private void grow() {
+        int capacity = this.beginLines.length + (this.beginLines.length >> 1);
+        for (int column = 0; column < STRING_COLUMNS; ++column) {
+            this.strings[column] = Arrays.copyOf(this.strings[column], capacity);
+        }
+        this.descriptions = Arrays.copyOf(this.descriptions, capacity);
+        this.beginLines = Arrays.copyOf(this.beginLines, capacity);
+        this.endLines = Arrays.copyOf(this.endLines, capacity);
+        this.priorities = Arrays.copyOf(this.priorities, capacity);
+    }
+
+    /**
+     * Creates a copy of this report that is never modified, with its own
+     * dictionary that assigns the same ids.
+     */
+    private ColumnarReport snapshot() {
+        ColumnarReport copy = new ColumnarReport();
+        for (int id = 1; id < this.dictionary.size(); ++id) {
+            copy.dictionary.add(this.dictionary.get(id));
+        }
+        for (int column = 0; column < STRING_COLUMNS; ++column) {
+            copy.strings[column] = Arrays.copyOf(this.strings[column], this.size);
+        }
+        copy.descriptions = Arrays.copyOf(this.descriptions, this.size);
+        copy.beginLines = Arrays.copyOf(this.beginLines, this.size);
+        copy.endLines = Arrays.copyOf(this.endLines, this.size);
+        copy.priorities = Arrays.copyOf(this.priorities, this.size);
+        copy.size = this.size;
+
+        return copy;
+    }
+
+    private void check(int i) {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+        }
+    }
+
+    /**
+     * Index over the columns of a report snapshot. The positions of the
+     * violations are grouped by dictionary id on the first query of a column,
+     * views are only created for the violations of a query result.
+     */
+    private class ColumnarIndex extends ReportIndex {
+
+        /**
+         * Lazily built positions per dictionary id, one array per column.
+         */
+        private int[][][] groups = new int[STRING_COLUMNS][][];
+
+        /**
+         * Lazily built positions per file id, ordered by begin line, and the
+         * longest line range of a single violation per file id.
+         */
+        private int[][] lines = null;
+
+        private int[] spans = null;
+
+        private ColumnarIndex() {
+            super(Collections.<RuleViolation>emptyList());
+        }
+
+        @Override
+        public synchronized List<RuleViolation> getByFile(String fileName) {
+            return this.toViolations(this.find(FILE, fileName));
+        }
+
+        @Override
+        public synchronized List<RuleViolation> getByRule(String rule) {
+            return this.toViolations(this.find(RULE, rule));
+        }
+
+        @Override
+        public synchronized List<RuleViolation> getByPackage(String packageName) {
+            return this.toViolations(this.find(PACKAGE, packageName));
+        }
+
+        @Override
+        public synchronized List<RuleViolation> getByClass(String className) {
+            return this.toViolations(this.find(CLASS, className));
+        }
+
+        @Override
+        public synchronized List<RuleViolation> getByMethod(String className, String methodName) {
+            int method = dictionary.getId(methodName);
+
+            List<RuleViolation> result = new ArrayList<RuleViolation>();
+            for (int i : this.find(CLASS, className)) {
+                if (strings[METHOD][i] == method) {
+                    result.add(getRuleViolation(i));
+                }
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        @Override
+        public synchronized List<RuleViolation> getByLines(String fileName, int beginLine, int endLine) {
+            int id = dictionary.getId(fileName);
+            if (id < 0 || this.find(FILE, fileName).length == 0) {
+                return Collections.emptyList();
+            }
+
+            int[] candidates = this.getLines(id);
+            int from = this.lowerBound(candidates, beginLine - this.spans[id]);
+            int to = this.lowerBound(candidates, endLine + 1);
+
+            List<RuleViolation> result = new ArrayList<RuleViolation>();
+            for (int i = from; i < to; ++i) {
+                if (endLines[candidates[i]] >= beginLine) {
+                    result.add(getRuleViolation(candidates[i]));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized Map<String, Integer> countByFile() {
+            return count(FILE);
+        }
+
+        @Override
+        public synchronized Map<String, Integer> countByRule() {
+            return count(RULE);
+        }
+
+        @Override
+        public synchronized Map<String, Integer> countByPackage() {
+            return count(PACKAGE);
+        }
+
+        @Override
+        public synchronized Map<String, Integer> countByClass() {
+            return count(CLASS);
+        }
+
+        /**
+         * Returns the positions of the violations with the given value in the
+         * given column.
+         */
+        private int[] find(int column, String value) {
+            if (this.groups[column] == null) {
+                this.groups[column] = groupIds(column);
+            }
+            int id = dictionary.getId(value);
+            if (id < 0 || this.groups[column][id] == null) {
+                return new int[0];
+            }
+            return this.groups[column][id];
+        }
+
+        /**
+         * Returns the positions of the violations of the given file id,
+         * ordered by begin and end line.
+         */
+        private int[] getLines(int id) {
+            if (this.lines == null) {
+                this.lines = new int[dictionary.size()][];
+                this.spans = new int[dictionary.size()];
+            }
+            if (this.lines[id] == null) {
+                int[] order = this.groups[FILE][id].clone();
+                sort(order, new int[order.length], 0, order.length, new int[dictionary.size()]);
+
+                for (int i : order) {
+                    this.spans[id] = Math.max(this.spans[id], endLines[i] - beginLines[i]);
+                }
+                this.lines[id] = order;
+            }
+            return this.lines[id];
+        }
+
+        /**
+         * Returns the index of the first position whose violation begins at
+         * or after the given line.
+         */
+        private int lowerBound(int[] positions, int line) {
+            int low = 0;
+            int high = positions.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (beginLines[positions[mid]] < line) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private List<RuleViolation> toViolations(int[] positions) {
+            List<RuleViolation> result = new ArrayList<RuleViolation>(positions.length);
+            for (int i : positions) {
+                result.add(getRuleViolation(i));
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+
+    /**
+     * Read only list that creates a view for each requested violation.
+     */
+    private class ViolationList extends AbstractList<RuleViolation> implements RandomAccess {
+
+        @Override
+        public RuleViolation get(int i) {
+            return getRuleViolation(i);
+        }
+
+        @Override
+        public int size() {
+            return ColumnarReport.this.size();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Distributes source files over a fixed number of concurrent phpmd workers,
+ * based on the estimated cost of each file.
+ *
+ * The files are packed longest processing time first into a few chunks per
+ * worker, each time into the chunk with the lowest total cost, and the chunks
+ * are packed the same way into one queue per worker. A worker takes chunks
+ * from the head of its own queue, the most expensive ones first. When its own
+ * queue is empty, it steals the cheapest chunk of the worker with the highest
+ * remaining cost, so that wrong estimates do not leave a worker idle while
+ * another one still has work queued.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class CostScheduler {
+
+    /**
+     * Number of chunks created for each worker.
+     */
+    public static final int CHUNKS_PER_WORKER = 4;
+
+    /**
+     * A group of source files that is analyzed by a single phpmd process.
+     */
+    public static class Chunk implements Comparable<Chunk> {
+
+        private List<SourceManifest.Entry> entries = new ArrayList<SourceManifest.Entry>();
+
+        private double cost = 0;
+
+        private void add(SourceManifest.Entry entry, double cost) {
+            this.entries.add(entry);
+            this.cost += cost;
+        }
+
+        /**
+         * Returns the source files of this chunk.
+         *
+         * @return The manifest entries.
+         */
+        public List<SourceManifest.Entry> getEntries() {
+            return Collections.unmodifiableList(this.entries);
+        }
+
+        /**
+         * Returns the estimated cost of all files in this chunk.
+         *
+         * @return The estimated cost.
+         */
+        public double getCost() {
+            return this.cost;
+        }
+
+        /**
+         * Returns a source list that contains each file of this chunk as a
+         * single source.
+         *
+         * @return The source list.
+         */
+        public SourceList toSourceList() {
+            SourceList sources = new SourceList();
+            for (SourceManifest.Entry entry : this.entries) {
+                sources.add(new Source(entry.getFile()));
+            }
+            return sources;
+        }
+
+        public int compareTo(Chunk other) {
+            return Double.compare(this.cost, other.cost);
+        }
+    }
+
+    /**
+     * Queued chunks of each worker, ordered from the highest to the lowest
+     * cost.
+     */
+    private List<Deque<Chunk>> queues = null;
+
+    /**
+     * Estimated cost of the queued chunks of each worker.
+     */
+    private double[] remaining = null;
+
+    /**
+     * Plans the analysis of the given source files by at most <b>workers</b>
+     * concurrent workers.
+     *
+     * @param durations The store used to estimate the cost of each file.
+     * @param manifest  The source files to analyze.
+     * @param workers   The maximum number of workers.
+     */
+    public CostScheduler(DurationStore durations, SourceManifest manifest, int workers) {
+        List<SourceManifest.Entry> entries = new ArrayList<SourceManifest.Entry>(manifest.getEntries());
+        final double[] costs = new double[entries.size()];
+        for (int i = 0; i < costs.length; ++i) {
+            costs[i] = durations.estimate(entries.get(i).getFile(), entries.get(i).getSize());
+        }
+
+        Integer[] order = new Integer[costs.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(costs[b], costs[a]);
+            }
+        });
+
+        workers = Math.max(1, Math.min(workers, entries.size()));
+
+        PriorityQueue<Chunk> chunks = new PriorityQueue<Chunk>();
+        for (int i = 0, n = Math.min(workers * CHUNKS_PER_WORKER, entries.size()); i < n; ++i) {
+            chunks.add(new Chunk());
+        }
+        for (Integer index : order) {
+            Chunk chunk = chunks.poll();
+            chunk.add(entries.get(index), costs[index]);
+            chunks.add(chunk);
+        }
+
+        List<Chunk> sorted = new ArrayList<Chunk>(chunks);
+        Collections.sort(sorted, Collections.reverseOrder());
+
+        this.queues = new ArrayList<Deque<Chunk>>(workers);
+        this.remaining = new double[workers];
+        for (int i = 0; i < workers; ++i) {
+            this.queues.add(new ArrayDeque<Chunk>());
+        }
+        for (Chunk chunk : sorted) {
+            int worker = 0;
+            for (int i = 1; i < workers; ++i) {
+                if (this.remaining[i] < this.remaining[worker]) {
+                    worker = i;
+                }
+            }
+            this.queues.get(worker).addLast(chunk);
+            this.remaining[worker] += chunk.cost;
+        }
+    }
+
+    /**
+     * Returns the number of workers, which is never larger than the number
+     * of source files.
+     *
+     * @return The number of workers.
+     */
+    public int getWorkers() {
+        return this.queues.size();
+    }
+
+    /**
+     * Returns the next chunk for the given worker, or <b>null</b> when no
+     * chunk is left for any worker.
+     *
+     * @param worker Index of the requesting worker.
+     *
+     * @return The next chunk or <b>null</b>.
+     */
+    public synchronized Chunk next(int worker) {
+        Chunk chunk = this.queues.get(worker).pollFirst();
+        if (chunk == null) {
+            int victim = -1;
+            for (int i = 0; i < this.queues.size(); ++i) {
+                if (!this.queues.get(i).isEmpty()
+                        && (victim == -1 || this.remaining[i] > this.remaining[victim])) {
+                    victim = i;
+                }
+            }
+            if (victim == -1) {
+                return null;
+            }
+            worker = victim;
+            chunk = this.queues.get(worker).pollLast();
+        }
+        this.remaining[worker] -= chunk.cost;
+        return chunk;
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Small local store for the analysis durations of single source files, used
+ * to estimate the cost of future runs. phpmd reports no per file timings, so
+ * the duration of a process is attributed to its files in proportion to their
+ * estimated cost, and repeated measurements of a file are smoothed with an
+ * exponential moving average.
+ *
+ * Files without a recorded duration are estimated from their size and the
+ * average time per byte of their directory, or of all recorded files when
+ * their directory is unknown as well. An empty store estimates every file
+ * by its size.
+ *
+ * The store is a plain text file with one <b>nanos TAB size TAB path</b> line
+ * per file.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class DurationStore {
+
+    /**
+     * First line of each store file.
+     */
+    private static final String HEADER = "phpmd-durations 1";
+
+    /**
+     * Weight of a new measurement in the moving average.
+     */
+    private static final double SMOOTHING = 0.5;
+
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * The file that backs this store.
+     */
+    private File file = null;
+
+    /**
+     * Recorded durations by absolute file path, loaded on first use.
+     */
+    private Map<String, Sample> samples = null;
+
+    /**
+     * Time per byte of each directory, reset whenever a duration is recorded.
+     */
+    private Map<String, Double> directoryRates = null;
+
+    /**
+     * Time per byte of all recorded files, zero when the store is empty.
+     */
+    private double globalRate = 0;
+
+    /**
+     * Constructs a store that is backed by the given file. A missing or
+     * unreadable file results in an empty store.
+     *
+     * @param file The store file.
+     */
+    public DurationStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Estimates the analysis cost of the given source file.
+     *
+     * @param file The source file.
+     * @param size The size of the source file in bytes.
+     *
+     * @return The estimated cost, always greater than zero.
+     */
+    public synchronized double estimate(File file, long size) {
+        this.load();
+
+        Sample sample = this.samples.get(file.getAbsolutePath());
+        if (sample != null) {
+            if (sample.size > 0 && size > 0) {
+                return Math.max(1, sample.nanos * ((double) size / sample.size));
+            }
+            return Math.max(1, sample.nanos);
+        }
+
+        this.computeRates();
+
+        Double rate = this.directoryRates.get(this.getDirectory(file.getAbsolutePath()));
+        if (rate == null) {
+            rate = this.globalRate;
+        }
+        if (rate <= 0) {
+            return Math.max(1, size);
+        }
+        return Math.max(1, rate * size);
+    }
+
+    /**
+     * Records the duration of a phpmd process that analyzed the given files.
+     *
+     * @param entries The analyzed source files.
+     * @param nanos   The duration of the process in nanoseconds.
+     */
+    public synchronized void record(List<SourceManifest.Entry> entries, long nanos) {
+        double[] estimates = new double[entries.size()];
+        double total = 0;
+        for (int i = 0; i < estimates.length; ++i) {
+            SourceManifest.Entry entry = entries.get(i);
+            estimates[i] = this.estimate(entry.getFile(), entry.getSize());
+            total += estimates[i];
+        }
+        if (total <= 0) {
+            return;
+        }
+
+        for (int i = 0; i < estimates.length; ++i) {
+            SourceManifest.Entry entry = entries.get(i);
+            String path = entry.getFile().getAbsolutePath();
+
+            double share = nanos * (estimates[i] / total);
+            Sample sample = this.samples.get(path);
+            if (sample != null) {
+                share = SMOOTHING * share + (1 - SMOOTHING) * sample.nanos;
+            }
+            this.samples.put(path, new Sample((long) share, entry.getSize()));
+        }
+        this.directoryRates = null;
+    }
+
+    /**
+     * Returns the number of files with a recorded duration.
+     *
+     * @return The number of recorded files.
+     */
+    public synchronized int size() {
+        this.load();
+        return this.samples.size();
+    }
+
+    /**
+     * Removes the durations of all files that are not part of the given
+     * manifest, for example because they were deleted or moved, so that the
+     * store does not grow with every file that was ever analyzed.
+     *
+     * @param manifest The current source files.
+     */
+    public synchronized void retain(SourceManifest manifest) {
+        this.load();
+
+        Set<String> paths = new HashSet<String>();
+        for (File file : manifest.getFiles()) {
+            paths.add(file.getAbsolutePath());
+        }
+
+        Iterator<String> it = this.samples.keySet().iterator();
+        while (it.hasNext()) {
+            if (!paths.contains(it.next())) {
+                it.remove();
+                this.directoryRates = null;
+            }
+        }
+    }
+
+    /**
+     * Writes all recorded durations into the store file. The file is written
+     * to a temporary file first and then atomically moved into place, so that
+     * concurrent readers see either the old or the new store.
+     *
+     * @throws IOException When the store file cannot be written.
+     */
+    public synchronized void save() throws IOException {
+        this.load();
+
+        File parent = this.file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent + ".");
+        }
+
+        File temp = File.createTempFile(this.file.getName(), ".tmp", parent);
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(temp), CHARSET);
+            try {
+                StringBuilder line = new StringBuilder();
+                out.write(HEADER);
+                out.write('\n');
+                for (Map.Entry<String, Sample> entry : this.samples.entrySet()) {
+                    line.setLength(0);
+                    line.append(entry.getValue().nanos).append('\t')
+                        .append(entry.getValue().size).append('\t')
+                        .append(entry.getKey()).append('\n');
+                    out.write(line.toString());
+                }
+            } finally {
+                out.close();
+            }
+
+            try {
+                Files.move(
+                        temp.toPath(),
+                        this.file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE
+                );
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private void load() {
+        if (this.samples != null) {
+            return;
+        }
+        this.samples = new HashMap<String, Sample>();
+        if (!this.file.isFile()) {
+            return;
+        }
+
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(this.file), CHARSET);
+            BufferedReader in = new BufferedReader(reader);
+            if (!HEADER.equals(in.readLine())) {
+                return;
+            }
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    continue;
+                }
+                try {
+                    this.samples.put(
+                            fields[2],
+                            new Sample(Long.parseLong(fields[0]), Long.parseLong(fields[1]))
+                    );
+                } catch (NumberFormatException ex) {
+                }
+            }
+        } catch (IOException ex) {
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the time per byte of each directory and of all files.
+     */
+    private void computeRates() {
+        if (this.directoryRates != null) {
+            return;
+        }
+
+        Map<String, double[]> totals = new HashMap<String, double[]>();
+        double nanos = 0, bytes = 0;
+        for (Map.Entry<String, Sample> entry : this.samples.entrySet()) {
+            Sample sample = entry.getValue();
+            if (sample.size <= 0) {
+                continue;
+            }
+            String directory = this.getDirectory(entry.getKey());
+            double[] total = totals.get(directory);
+            if (total == null) {
+                total = new double[2];
+                totals.put(directory, total);
+            }
+            total[0] += sample.nanos;
+            total[1] += sample.size;
+            nanos += sample.nanos;
+            bytes += sample.size;
+        }
+
+        this.directoryRates = new HashMap<String, Double>();
+        for (Map.Entry<String, double[]> entry : totals.entrySet()) {
+            this.directoryRates.put(entry.getKey(), entry.getValue()[0] / entry.getValue()[1]);
+        }
+        this.globalRate = (bytes > 0 ? nanos / bytes : 0);
+    }
+
+    private String getDirectory(String path) {
+        int index = path.lastIndexOf(File.separatorChar);
+        return (index == -1 ? "" : path.substring(0, index));
+    }
+
+    /**
+     * Recorded duration of a single file.
+     */
+    private static class Sample {
+
+        private long nanos = 0;
+
+        private long size = 0;
+
+        private Sample(long nanos, long size) {
+            this.nanos = nanos;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writes rule violations as a json document, which lists the violations
+ * grouped by file:
+ *
+ * <pre>
+ * {"files":[{"file":"/src/Foo.php","violations":[{"beginLine":2,...}]}]}
+ * </pre>
+ *
+ * Consecutive violations of the same file share one file entry, so that the
+ * violations read from a phpmd report keep their grouping. A file can still
+ * occur more than once when its violations are not received one after
+ * another.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class JsonReportWriter extends ReportWriter {
+
+    /**
+     * File name of the currently open file entry or <b>null</b>.
+     */
+    private String fileName = null;
+
+    /**
+     * Constructs a new json writer for the given stream.
+     *
+     * @param stream The output stream.
+     */
+    public JsonReportWriter(OutputStream stream) {
+        super(stream);
+    }
+
+    @Override
+    protected void writeHeader(Writer out) throws IOException {
+        out.write("{\"files\":[");
+    }
+
+    @Override
+    protected void writeViolation(Writer out, RuleViolation violation) throws IOException {
+        if (violation.getFileName().equals(this.fileName)) {
+            out.write(',');
+        } else {
+            if (this.fileName != null) {
+                out.write("]},");
+            }
+            this.fileName = violation.getFileName();
+
+            out.write("\n{\"file\":");
+            writeJsonString(out, this.fileName);
+            out.write(",\"violations\":[");
+        }
+
+        out.write("{\"beginLine\":");
+        out.write(Integer.toString(violation.getBeginLine()));
+        out.write(",\"endLine\":");
+        out.write(Integer.toString(violation.getEndLine()));
+        this.writeProperty(out, "package", violation.getPackageName());
+        this.writeProperty(out, "class", violation.getClassName());
+        this.writeProperty(out, "method", violation.getMethodName());
+        this.writeProperty(out, "function", violation.getFunctionName());
+        this.writeProperty(out, "rule", violation.getRule());
+        this.writeProperty(out, "ruleSet", violation.getRuleSet());
+        this.writeProperty(out, "externalInfoUrl", violation.getExternalInfoUrl());
+        out.write(",\"priority\":");
+        out.write(Integer.toString(violation.getPriority()));
+        this.writeProperty(out, "description", violation.getDescription());
+        out.write('}');
+    }
+
+    @Override
+    protected void writeFooter(Writer out) throws IOException {
+        if (this.fileName != null) {
+            out.write("]}");
+        }
+        out.write("\n]}\n");
+    }
+
+    /**
+     * Writes a string property, unless its value is empty.
+     */
+    private void writeProperty(Writer out, String name, String value) throws IOException {
+        if (value == null || value.length() == 0) {
+            return;
+        }
+        out.write(",\"");
+        out.write(name);
+        out.write("\":");
+        writeJsonString(out, value);
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.util.Arrays;
+
+/**
+ * Index over a set of line ranges that answers whether a given line range
+ * overlaps with one of the indexed ranges. The ranges are sorted and merged
+ * on the first query, so that each query is a single binary search.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class LineRangeIndex {
+
+    /**
+     * Initial capacity of the range arrays.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * First and last lines of the indexed ranges.
+     */
+    private int[] begins = new int[INITIAL_CAPACITY],
+                  ends = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of indexed ranges.
+     */
+    private int size = 0;
+
+    /**
+     * Are the ranges sorted and merged?
+     */
+    private boolean normalized = true;
+
+    /**
+     * Adds a line range to this index.
+     *
+     * @param beginLine First line of the range.
+     * @param endLine   Last line of the range.
+     */
+    public synchronized void add(int beginLine, int endLine) {
+        if (this.size == this.begins.length) {
+            this.begins = Arrays.copyOf(this.begins, this.size * 2);
+            this.ends = Arrays.copyOf(this.ends, this.size * 2);
+        }
+        this.begins[this.size] = Math.min(beginLine, endLine);
+        this.ends[this.size] = Math.max(beginLine, endLine);
+        ++this.size;
+
+        this.normalized = false;
+    }
+
+    /**
+     * Tests if the given line range overlaps with at least one indexed range.
+     *
+     * @param beginLine First line of the tested range.
+     * @param endLine   Last line of the tested range.
+     *
+     * @return <b>true</b> when the range overlaps with an indexed range.
+     */
+    public synchronized boolean overlaps(int beginLine, int endLine) {
+        this.normalize();
+
+        // Find the last range that begins at or before the tested end line
+        int low = 0;
+        int high = this.size - 1;
+        int match = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.begins[mid] <= endLine) {
+                match = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return (match != -1 && this.ends[match] >= beginLine);
+    }
+
+    /**
+     * Returns the number of distinct ranges in this index.
+     *
+     * @return The number of merged ranges.
+     */
+    public synchronized int size() {
+        this.normalize();
+        return this.size;
+    }
+
+    /**
+     * Sorts the ranges by their first line and merges overlapping and
+     * adjacent ranges, so that the ranges are disjoint and ascending.
+     */
+    private void normalize() {
+        if (this.normalized) {
+            return;
+        }
+
+        long[] ranges = new long[this.size];
+        for (int i = 0; i < this.size; ++i) {
+            ranges[i] = ((long) this.begins[i] << 32) | (this.ends[i] & 0xffffffffL);
+        }
+        Arrays.sort(ranges);
+
+        int merged = 0;
+        for (long range : ranges) {
+            int begin = (int) (range >> 32);
+            int end = (int) range;
+            if (merged > 0 && begin <= this.ends[merged - 1] + 1) {
+                this.ends[merged - 1] = Math.max(this.ends[merged - 1], end);
+            } else {
+                this.begins[merged] = begin;
+                this.ends[merged] = end;
+                ++merged;
+            }
+        }
+        this.size = merged;
+        this.normalized = true;
+    }
+}
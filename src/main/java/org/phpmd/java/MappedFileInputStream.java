@@ -0,0 +1,171 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Input stream that reads a file through memory mapped windows of its file
+ * channel, so that the file content is never copied into an intermediate heap
+ * buffer. Files larger than a single window, including files above 2GB, are
+ * mapped one window after another.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+class MappedFileInputStream extends InputStream {
+
+    /**
+     * Default size of a single mapped window.
+     */
+    static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The channel of the read file.
+     */
+    private FileChannel channel = null;
+
+    /**
+     * Size of the read file.
+     */
+    private long size = 0;
+
+    /**
+     * File offset behind the current window.
+     */
+    private long position = 0;
+
+    /**
+     * Size of the mapped windows.
+     */
+    private long windowSize = WINDOW_SIZE;
+
+    /**
+     * The currently mapped window.
+     */
+    private MappedByteBuffer window = null;
+
+    MappedFileInputStream(File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    MappedFileInputStream(File file, long windowSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = this.channel.size();
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.map()) {
+            return -1;
+        }
+        return this.window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.map()) {
+            return -1;
+        }
+        int count = Math.min(length, this.window.remaining());
+        this.window.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count && this.map()) {
+            int step = (int) Math.min(count - skipped, this.window.remaining());
+            this.window.position(this.window.position() + step);
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        long remaining = this.size - this.position;
+        if (this.window != null) {
+            remaining += this.window.remaining();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.window = null;
+        this.channel.close();
+    }
+
+    /**
+     * Maps the next window when the current one was read completely.
+     *
+     * @return <b>false</b> when the end of the file was reached.
+     */
+    private boolean map() throws IOException {
+        if (this.window != null && this.window.hasRemaining()) {
+            return true;
+        }
+        if (this.position >= this.size) {
+            return false;
+        }
+        long length = Math.min(this.windowSize, this.size - this.position);
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, length);
+        this.position += length;
+
+        return true;
+    }
+}
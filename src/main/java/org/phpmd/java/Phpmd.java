@@ -47,6 +47,25 @@ import de.xplib.execution.Executable;
 import de.xplib.execution.ExecutableUtil;
 import de.xplib.execution.NonBlockingExecutable;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -71,6 +90,21 @@ public class Phpmd {
     public static final Integer EXIT_CODE_SUCCESS = 0,
                                 EXIT_CODE_VIOLATION = 2;
 
+    /**
+     * Default maximum length of the source argument in bytes. This stays
+     * below the command line limits of common operating systems, including
+     * the 32k characters of a windows command line.
+     */
+    public static final int DEFAULT_ARGUMENT_LIMIT = 30000;
+
+    /**
+     * Default executor for asynchronous runs. Each run blocks a thread while
+     * it reads phpmd's output, so these runs must not use the common pool.
+     * The pool is limited to the number of available cpus, further runs wait
+     * in its queue before their process gets started.
+     */
+    private static ExecutorService asyncExecutor = null;
+
     /**
      * The wrapped executable instance.
      */
@@ -97,11 +131,68 @@ public class Phpmd {
      */
     private SourceList sourceList = new SourceList();
 
+    /**
+     * Expands the configured sources into the analyzed source files.
+     */
+    private SourceDiscovery discovery = new SourceDiscovery();
+
+    /**
+     * Maximum length of the source argument passed to a single phpmd process.
+     */
+    private int argumentLimit = DEFAULT_ARGUMENT_LIMIT;
+
+    /**
+     * Maximum number of phpmd processes that analyze the batches of an
+     * oversized source list at the same time.
+     */
+    private int batchConcurrency = 1;
+
+    /**
+     * Wall clock timeout of a single phpmd process in nanoseconds.
+     */
+    private long timeoutNanos = 0;
+
+    /**
+     * Idle output timeout of a single phpmd process in nanoseconds.
+     */
+    private long idleTimeoutNanos = 0;
+
     /**
      * Should phpmd be run in a separate thread?
      */
     private boolean nonBlocking = false;
 
+    /**
+     * Optional cache for the violations of unchanged source files.
+     */
+    private ReportCache cache = null;
+
+    /**
+     * Optional pool of long running phpmd workers.
+     */
+    private PhpmdWorkerPool workerPool = null;
+
+    /**
+     * Optional baseline of known violations that will not be reported.
+     */
+    private Baseline baseline = null;
+
+    /**
+     * Optional store of per file analysis durations used to schedule sharded
+     * runs.
+     */
+    private DurationStore durations = null;
+
+    /**
+     * Receives the metrics of each phpmd process run.
+     */
+    private MetricsListener metricsListener = new MetricsAdapter();
+
+    /**
+     * Metrics of the last phpmd process run.
+     */
+    private volatile RunMetrics metrics = null;
+
     public Phpmd() {
         this(ExecutableUtil.findExecutableOnUsersPath(SCRIPT_NAME));
     }
@@ -111,28 +202,870 @@ public class Phpmd {
     }
 
     public Report run() {
+        if (this.cache != null) {
+            return this.filterReport(this.runCached());
+        }
+        if (this.workerPool == null) {
+            List<SourceList> batches = this.getSources().batch(this.argumentLimit);
+            if (batches.size() > 1 || this.hasTimeout()) {
+                return this.filterReport(
+                        this.runAll(this.createTasks(batches, this.ruleSets), this.batchConcurrency)
+                );
+            }
+        }
+
+        Report report = new Report();
+        this.run(report);
+
+        return report;
+    }
+
+    /**
+     * Runs phpmd and passes each rule violation to the given listener as soon
+     * as it was read from phpmd's output. A listener can abort the running
+     * phpmd process by throwing a runtime exception, which will be passed to
+     * the caller of this method.
+     *
+     * @param listener Listener that receives the rule violations.
+     *
+     * @return The exit code of the phpmd process. When the sources were
+     *         analyzed in batches, this is the first exit code that signals
+     *         an error, otherwise {@link #EXIT_CODE_VIOLATION} when any batch
+     *         found violations.
+     */
+    public Integer run(ViolationListener listener) {
+        listener = this.filterListener(listener);
+        if (this.workerPool != null) {
+            int count = this.workerPool.run(this.getSources(), this.ruleSets, this.priority, listener);
+            return (count == 0 ? EXIT_CODE_SUCCESS : EXIT_CODE_VIOLATION);
+        }
 
         this.setReportFormat(new ReportFormat(ReportFormat.FORMAT_XML));
         this.setBlocking();
 
-        ReportExecutable script = new ReportExecutable(this.executable);
-        this.prepareExecutable(script).exec();
+        Integer exitCode = EXIT_CODE_SUCCESS;
+        for (SourceList sources : this.getSources().batch(this.argumentLimit)) {
+            long validateStart = System.nanoTime();
+            ReportExecutable script = new ReportExecutable(this.executable, listener);
+            this.prepareExecutable(script, sources, this.format, this.ruleSets);
+            this.applyTimeouts(script);
+
+            long spawnStart = System.nanoTime();
+            script.exec();
+            this.complete(script, spawnStart - validateStart, spawnStart);
+
+            exitCode = mergeExitCodes(exitCode, script.exitCode());
+        }
+        return exitCode;
+    }
+
+    /**
+     * Runs phpmd and only counts the rule violations per rule, file, package
+     * and priority. No rule violation objects are created for the counted
+     * violations, unless a baseline or a worker pool is configured, which
+     * need the complete violations.
+     *
+     * @return The summary of all violations.
+     *
+     * @throws IllegalStateException When a phpmd process failed with an exit
+     *         code other than {@link #EXIT_CODE_SUCCESS} or
+     *         {@link #EXIT_CODE_VIOLATION}, or its report could not be read
+     *         to the end, so that the summary would be incomplete.
+     */
+    public ReportSummary runSummary() {
+        ReportSummary summary = new ReportSummary();
+        if (this.baseline != null || this.workerPool != null) {
+            Integer exitCode = this.run((ViolationListener) summary);
+            if (!isRegularExitCode(exitCode)) {
+                throw new IllegalStateException("phpmd failed with exit code " + exitCode + ".");
+            }
+            return summary;
+        }
+
+        this.setReportFormat(new ReportFormat(ReportFormat.FORMAT_XML));
+        this.setBlocking();
+
+        for (SourceList sources : this.getSources().batch(this.argumentLimit)) {
+            long validateStart = System.nanoTime();
+            ReportExecutable script = new ReportExecutable(this.executable, summary);
+            this.prepareExecutable(script, sources, this.format, this.ruleSets);
+            this.applyTimeouts(script);
+
+            long spawnStart = System.nanoTime();
+            script.exec();
+            this.complete(script, spawnStart - validateStart, spawnStart);
+
+            if (!isRegularExitCode(script.exitCode())) {
+                throw new IllegalStateException("phpmd failed with exit code " + script.exitCode() + ".");
+            }
+            if (!script.isComplete()) {
+                throw new IllegalStateException("Cannot read the complete phpmd report.");
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Splits the configured sources into <b>shards</b> partitions of roughly
+     * the same byte size and analyzes them with concurrent phpmd processes.
+     * When a duration store is set, the sources are instead scheduled by
+     * their recorded analysis durations on <b>shards</b> concurrent workers.
+     *
+     * @param shards The maximum number of partitions.
+     *
+     * @return A single report with the violations of all partitions.
+     *
+     * @throws IllegalStateException When the duration store cannot be saved.
+     *
+     * @see #setDurationStore(DurationStore)
+     */
+    public Report run(int shards) {
+        if (this.durations != null) {
+            return this.runScheduled(shards);
+        }
+        return this.run(shards, SourceList.Partitioning.BYTE_SIZE);
+    }
+
+    /**
+     * Splits the configured sources into <b>shards</b> balanced partitions and
+     * analyzes them with concurrent phpmd processes. The number of processes
+     * running at the same time is limited to the number of available cpus.
+     *
+     * @param shards       The maximum number of partitions.
+     * @param partitioning The used partitioning strategy.
+     *
+     * @return A single report with the violations of all partitions.
+     */
+    public Report run(int shards, SourceList.Partitioning partitioning) {
+        this.sourceList.validate();
+        this.ruleSets.validate();
+        this.priority.validate();
+
+        List<Callable<Report>> tasks = new ArrayList<Callable<Report>>();
+        for (SourceList sources : this.discovery.discover(this.sourceList).partition(shards, partitioning)) {
+            tasks.addAll(this.createTasks(this.batch(sources), this.ruleSets));
+        }
+        return this.filterReport(this.runAll(tasks, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Analyzes the configured sources on at most <b>workers</b> concurrent
+     * workers, scheduled by a cost scheduler, and records the duration of
+     * each phpmd process in the duration store. The number of workers is
+     * limited to the number of available cpus. Durations of files that are
+     * no longer part of the sources are dropped from the store, and an
+     * IllegalStateException is thrown when the store cannot be saved.
+     */
+    private Report runScheduled(int workers) {
+        this.sourceList.validate();
+        this.ruleSets.validate();
+        this.priority.validate();
+
+        SourceManifest manifest = this.discovery.discover(this.sourceList);
+        final CostScheduler scheduler = new CostScheduler(
+                this.durations,
+                manifest,
+                Math.min(workers, Runtime.getRuntime().availableProcessors())
+        );
+
+        List<Callable<Report>> tasks = new ArrayList<Callable<Report>>();
+        for (int i = 0; i < scheduler.getWorkers(); ++i) {
+            final int worker = i;
+            tasks.add(new Callable<Report>() {
+                public Report call() {
+                    Report report = new Report();
+                    for (CostScheduler.Chunk chunk = scheduler.next(worker);
+                            chunk != null;
+                            chunk = scheduler.next(worker)) {
+                        long start = System.nanoTime();
+                        for (SourceList sources : batch(chunk.toSourceList())) {
+                            report.merge(runIsolating(sources, ruleSets));
+                        }
+                        durations.record(chunk.getEntries(), System.nanoTime() - start);
+                    }
+                    return report;
+                }
+            });
+        }
 
-        return script.getReport();
+        Report report = this.runAll(tasks, tasks.size());
+        this.durations.retain(manifest);
+        try {
+            this.durations.save();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot save the analysis durations: " + ex.getMessage(), ex);
+        }
+        return this.filterReport(report);
+    }
+
+    /**
+     * Analyzes the configured sources with one concurrent phpmd process for
+     * each configured rule set and merges their violations into one report.
+     *
+     * @return A single report with the violations of all rule sets.
+     */
+    public Report runPerRuleSet() {
+        return this.runPerRuleSet(this.ruleSets.getRuleSets().size());
+    }
+
+    /**
+     * Splits the configured rule sets into at most <b>groups</b> groups and
+     * analyzes the same sources with one concurrent phpmd process per group,
+     * so that the run takes about as long as the slowest group instead of the
+     * sum of all rule sets. The number of processes running at the same time
+     * is limited to the number of available cpus. Violations reported by more
+     * than one group are only added once. A configured cache is not used.
+     *
+     * @param groups The maximum number of rule set groups.
+     *
+     * @return A single report with the violations of all groups.
+     */
+    public Report runPerRuleSet(int groups) {
+        this.sourceList.validate();
+        this.ruleSets.validate();
+        this.priority.validate();
+
+        List<SourceList> batches = this.batch(this.getSources());
+
+        List<Callable<Report>> tasks = new ArrayList<Callable<Report>>();
+        for (RuleSets group : this.ruleSets.split(groups)) {
+            tasks.addAll(this.createTasks(batches, group));
+        }
+        Report report = this.runAll(tasks, Runtime.getRuntime().availableProcessors());
+
+        return this.filterReport(this.distinct(report));
+    }
+
+    /**
+     * Analyzes the configured sources once and starts watching them for
+     * changes, using the default debounce interval.
+     *
+     * @return The started watcher with the live report.
+     *
+     * @throws IOException When the sources cannot be watched.
+     *
+     * @see PhpmdWatcher
+     */
+    public PhpmdWatcher watch() throws IOException {
+        return this.watch(PhpmdWatcher.DEFAULT_DEBOUNCE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Analyzes the configured sources once and starts watching them for
+     * changes. Changed files are analyzed again, once no further change
+     * occurred for the given debounce interval. The watcher must be closed
+     * when it is no longer needed.
+     *
+     * @param debounce The debounce interval.
+     * @param unit     The unit of the debounce interval.
+     *
+     * @return The started watcher with the live report.
+     *
+     * @throws IOException When the sources cannot be watched.
+     */
+    public PhpmdWatcher watch(long debounce, TimeUnit unit) throws IOException {
+        this.sourceList.validate();
+
+        PhpmdWatcher watcher = new PhpmdWatcher(this, this.sourceList, this.discovery, debounce, unit);
+        watcher.start();
+
+        return watcher;
+    }
+
+    /**
+     * Analyzes exactly the given source files with the current rule sets and
+     * priority. Used by the watcher to analyze changed files again.
+     */
+    Report analyze(SourceList sources) {
+        this.ruleSets.validate();
+        this.priority.validate();
+
+        return this.filterReport(
+                this.runAll(this.createTasks(this.batch(sources), this.ruleSets), this.batchConcurrency)
+        );
+    }
+
+    /**
+     * Runs phpmd only for those configured source files that were changed in
+     * the given diff and returns only those violations that overlap with a
+     * changed line range.
+     *
+     * @param diff The diff with the changed files and lines.
+     *
+     * @return A report with the violations in changed code.
+     */
+    public Report run(UnifiedDiff diff) {
+        this.sourceList.validate();
+        this.ruleSets.validate();
+        this.priority.validate();
+
+        SourceList changed = new SourceList();
+        for (File file : this.discovery.discover(this.sourceList).getFiles()) {
+            if (diff.getChangedLines(file) != null) {
+                changed.add(new Source(file));
+            }
+        }
+
+        Report report = new Report();
+        if (changed.getSources().isEmpty()) {
+            return report;
+        }
+
+        ViolationListener listener = this.filterListener(report);
+        Map<String, LineRangeIndex> lines = new HashMap<String, LineRangeIndex>();
+        Report changedReport = this.runAll(this.createTasks(this.batch(changed), this.ruleSets), this.batchConcurrency);
+        for (RuleViolation violation : changedReport.getRuleViolations()) {
+            LineRangeIndex changedLines = lines.get(violation.getFileName());
+            if (changedLines == null && !lines.containsKey(violation.getFileName())) {
+                changedLines = diff.getChangedLines(new File(violation.getFileName()));
+                lines.put(violation.getFileName(), changedLines);
+            }
+            if (changedLines != null
+                    && changedLines.overlaps(violation.getBeginLine(), violation.getEndLine())) {
+                listener.ruleViolation(violation);
+            }
+        }
+        for (String fileName : changedReport.getTimedOutFiles()) {
+            report.addTimedOutFile(fileName);
+        }
+        return report;
+    }
+
+    /**
+     * Runs phpmd only for those source files that have no entry in the
+     * configured cache and merges their violations with the cached ones. The
+     * violations of each analyzed file are stored in the cache afterwards,
+     * unless one of the phpmd processes failed or its report could not be
+     * read to the end. Files that timed out are never stored.
+     */
+    private Report runCached() {
+        this.sourceList.validate();
+        this.ruleSets.validate();
+        this.priority.validate();
+
+        Report report = new Report();
+
+        Map<String, String> keys = new HashMap<String, String>();
+        SourceList misses = new SourceList();
+        for (File file : this.discovery.discover(this.sourceList).getFiles()) {
+            String key = this.cache.createKey(file, this.ruleSets, this.priority);
+            List<RuleViolation> violations = this.cache.load(key, file);
+            if (violations == null) {
+                keys.put(this.getCanonicalPath(file), key);
+                misses.add(new Source(file));
+            } else {
+                for (RuleViolation violation : violations) {
+                    report.addRuleViolation(violation);
+                }
+            }
+        }
+
+        if (keys.isEmpty()) {
+            return report;
+        }
+
+        Map<String, List<RuleViolation>> violations = new HashMap<String, List<RuleViolation>>();
+        for (String path : keys.keySet()) {
+            violations.put(path, new ArrayList<RuleViolation>());
+        }
+        Map<String, String> paths = new HashMap<String, String>();
+        Report missReport = this.runAll(this.createTasks(this.batch(misses), this.ruleSets), this.batchConcurrency);
+        for (RuleViolation violation : missReport.getRuleViolations()) {
+            report.addRuleViolation(violation);
+
+            String path = paths.get(violation.getFileName());
+            if (path == null) {
+                path = this.getCanonicalPath(new File(violation.getFileName()));
+                paths.put(violation.getFileName(), path);
+            }
+            if (violations.containsKey(path)) {
+                violations.get(path).add(violation);
+            }
+        }
+        Set<String> timedOut = new HashSet<String>();
+        for (String fileName : missReport.getTimedOutFiles()) {
+            report.addTimedOutFile(fileName);
+            timedOut.add(this.getCanonicalPath(new File(fileName)));
+        }
+
+        if (!missReport.isComplete()) {
+            return report;
+        }
+        for (Map.Entry<String, String> key : keys.entrySet()) {
+            if (!timedOut.contains(key.getKey())) {
+                this.cache.store(key.getValue(), violations.get(key.getKey()));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Returns a report that contains each violation of the given report only
+     * once, in the order of their first occurrence.
+     */
+    private Report distinct(Report report) {
+        Set<List<Object>> keys = new HashSet<List<Object>>();
+
+        Report result = new Report();
+        for (RuleViolation violation : report.getRuleViolations()) {
+            List<Object> key = Arrays.<Object>asList(
+                    violation.getFileName(),
+                    violation.getRule(),
+                    violation.getClassName(),
+                    violation.getMethodName(),
+                    violation.getFunctionName(),
+                    violation.getBeginLine(),
+                    violation.getEndLine(),
+                    violation.getDescription()
+            );
+            if (keys.add(key)) {
+                result.addRuleViolation(violation);
+            }
+        }
+        for (String fileName : new LinkedHashSet<String>(report.getTimedOutFiles())) {
+            result.addTimedOutFile(fileName);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the violations of the configured baseline from the given report.
+     */
+    private Report filterReport(Report report) {
+        if (this.baseline == null) {
+            return report;
+        }
+        return this.baseline.filter(report);
+    }
+
+    /**
+     * Wraps the given listener, so that it does not receive the violations of
+     * the configured baseline.
+     */
+    private ViolationListener filterListener(ViolationListener listener) {
+        if (this.baseline == null) {
+            return listener;
+        }
+        return this.baseline.createFilter(listener);
+    }
+
+    private String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Starts phpmd asynchronously on the default executor. Cancelling the
+     * returned future destroys the phpmd process. An asynchronous run always
+     * starts a new phpmd process, a configured cache or worker pool is not
+     * used.
+     *
+     * Each running process holds one thread of the executor, which reads its
+     * output until the process ends. The default executor runs at most one
+     * process per available cpu at the same time, further runs are queued
+     * and their processes start when a thread becomes free.
+     *
+     * @return A future that completes with the report, or exceptionally with
+     *         an IllegalStateException when phpmd fails or its report cannot
+     *         be read to the end.
+     */
+    public CompletableFuture<Report> runAsync() {
+        return this.runAsync(getAsyncExecutor());
+    }
+
+    /**
+     * Starts phpmd asynchronously on the given executor. The configuration is
+     * validated before this method returns, so that invalid settings result
+     * in an exception instead of a failed future. Cancelling the returned
+     * future destroys the phpmd process, or prevents its start when the run
+     * is still queued. The running process holds one thread of the executor
+     * until it ends, so the executor limits the number of concurrent runs.
+     *
+     * @param executor The executor that runs and reads the phpmd process.
+     *
+     * @return A future that completes with the report, or exceptionally with
+     *         an IllegalStateException when phpmd fails or its report cannot
+     *         be read to the end.
+     */
+    public CompletableFuture<Report> runAsync(Executor executor) {
+        final long validateStart = System.nanoTime();
+        final Report report = new Report();
+        final ReportExecutable script = new ReportExecutable(this.executable, this.filterListener(report));
+        this.prepareExecutable(
+                script,
+                this.getSources(),
+                new ReportFormat(ReportFormat.FORMAT_XML),
+                this.ruleSets
+        );
+        this.applyTimeouts(script);
+        final long validateEnd = System.nanoTime();
+
+        final ProcessFuture<Report> future = new ProcessFuture<Report>(script);
+        executor.execute(new Runnable() {
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    long spawnStart = System.nanoTime();
+                    script.exec();
+                    complete(script, validateEnd - validateStart, spawnStart);
+                    if (!isRegularExitCode(script.exitCode())) {
+                        future.completeExceptionally(
+                                new IllegalStateException("phpmd failed with exit code " + script.exitCode() + ".")
+                        );
+                    } else if (!script.isComplete()) {
+                        future.completeExceptionally(
+                                new IllegalStateException("Cannot read the complete phpmd report.")
+                        );
+                    } else {
+                        future.complete(report);
+                    }
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Starts phpmd asynchronously on the default executor and writes the
+     * report into the given file. Cancelling the returned future destroys
+     * the phpmd process. Like {@link #runAsync()}, each running process holds
+     * one thread of the default executor, which runs at most one process per
+     * available cpu at the same time.
+     *
+     * @param output The report output file.
+     *
+     * @return A future that completes with the phpmd exit code.
+     */
+    public CompletableFuture<Integer> runAsync(ReportFile output) {
+        return this.runAsync(output, getAsyncExecutor());
+    }
+
+    /**
+     * Starts phpmd asynchronously on the given executor and writes the report
+     * into the given file. Cancelling the returned future destroys the phpmd
+     * process, or prevents its start when the run is still queued. The
+     * running process holds one thread of the executor until it ends.
+     *
+     * @param output   The report output file.
+     * @param executor The executor that runs the phpmd process.
+     *
+     * @return A future that completes with the phpmd exit code.
+     */
+    public CompletableFuture<Integer> runAsync(ReportFile output, Executor executor) {
+        final long validateStart = System.nanoTime();
+        final ReportFileExecutable script = new ReportFileExecutable(this.executable);
+        this.prepareExecutable(script, output);
+        this.applyTimeouts(script);
+        final long validateEnd = System.nanoTime();
+
+        final ProcessFuture<Integer> future = new ProcessFuture<Integer>(script);
+        executor.execute(new Runnable() {
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    long spawnStart = System.nanoTime();
+                    script.exec();
+                    complete(script, validateEnd - validateStart, spawnStart);
+                    future.complete(script.exitCode());
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Completes the metrics of a finished process run and passes them to the
+     * configured metrics listener.
+     */
+    private void complete(ProcessExecutable script, long validateNanos, long spawnStart) {
+        RunMetrics result = script.getMetrics();
+        result.setDuration(RunMetrics.Phase.VALIDATE, validateNanos);
+        if (script.getStartTime() >= spawnStart) {
+            result.setDuration(RunMetrics.Phase.SPAWN, script.getStartTime() - spawnStart);
+        }
+
+        for (RunMetrics.Phase phase : RunMetrics.Phase.values()) {
+            this.metricsListener.phaseCompleted(
+                    phase,
+                    result.getDuration(phase, TimeUnit.NANOSECONDS)
+            );
+        }
+        this.metricsListener.runCompleted(result);
+
+        this.metrics = result;
+    }
+
+    private static synchronized Executor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            asyncExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "phpmd-async");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return asyncExecutor;
     }
 
     public Integer run(File file) {
         return this.run(new ReportFile(file));
     }
 
+    /**
+     * Runs phpmd and writes the report into the given file. A blocking run
+     * records its metrics like the other runs, a non-blocking run returns
+     * before phpmd ends and records none.
+     *
+     * @param output The report output file.
+     *
+     * @return The phpmd exit code.
+     */
     public Integer run(ReportFile output) {
-        Executable script = new DefaultExecutable(this.executable);
-        script = this.prepare(this.prepareExecutable(script, output));
+        if (this.nonBlocking) {
+            Executable script = new DefaultExecutable(this.executable);
+            script = this.prepare(this.prepareExecutable(script, output));
+            script.exec();
+
+            return script.exitCode();
+        }
+
+        long validateStart = System.nanoTime();
+        ReportFileExecutable script = new ReportFileExecutable(this.executable);
+        this.prepareExecutable(script, output);
+        this.applyTimeouts(script);
+
+        long spawnStart = System.nanoTime();
         script.exec();
+        this.complete(script, spawnStart - validateStart, spawnStart);
 
         return script.exitCode();
     }
 
+    /**
+     * Runs phpmd with the xml report format, writes the report into the given
+     * file and parses the written file afterwards. This keeps large reports
+     * out of the pipe between phpmd and the JVM, the file is read through a
+     * memory mapped channel.
+     *
+     * @param output The report output file.
+     *
+     * @return The parsed report.
+     *
+     * @throws IllegalStateException When phpmd failed with an irregular exit
+     *         code, because the report file may then be missing, incomplete
+     *         or left over from a previous run.
+     */
+    public Report runReport(ReportFile output) {
+        this.setReportFormat(new ReportFormat(ReportFormat.FORMAT_XML));
+        this.setBlocking();
+
+        long validateStart = System.nanoTime();
+        ReportFileExecutable script = new ReportFileExecutable(this.executable);
+        this.prepareExecutable(script, output);
+        this.applyTimeouts(script);
+
+        long spawnStart = System.nanoTime();
+        script.exec();
+        this.complete(script, spawnStart - validateStart, spawnStart);
+
+        if (!isRegularExitCode(script.exitCode())) {
+            throw new IllegalStateException("phpmd failed with exit code " + script.exitCode() + ".");
+        }
+
+        try {
+            return this.filterReport(output.parse());
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot read report file: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Executes the given tasks on a pool of at most <b>threads</b> threads
+     * and merges their reports in the order of the tasks. A single task runs
+     * in the calling thread. When the calling thread is interrupted, the
+     * pool threads are interrupted and an IllegalStateException is thrown
+     * right away, so that an interrupted run never looks like a clean one.
+     * An interrupted task destroys its phpmd process as soon as it waits for
+     * the process' end. A task that is still reading the report keeps its
+     * process running until phpmd closes its output or a configured timeout
+     * destroys it.
+     */
+    private Report runAll(List<Callable<Report>> tasks, int threads) {
+        if (tasks.isEmpty()) {
+            return new Report();
+        }
+        if (tasks.size() == 1 || threads <= 1) {
+            Report report = new Report();
+            for (Callable<Report> task : tasks) {
+                try {
+                    report.merge(task.call());
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return report;
+        }
+
+        threads = Math.min(tasks.size(), threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Report report = new Report();
+            for (Future<Report> future : pool.invokeAll(tasks)) {
+                report.merge(future.get());
+            }
+            return report;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for phpmd.", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits the given sources into batches that fit into the configured
+     * argument limit. Sources sent to a worker pool are never split, because
+     * they are not passed on a command line.
+     */
+    private List<SourceList> batch(SourceList sources) {
+        if (this.workerPool != null) {
+            return Collections.singletonList(sources);
+        }
+        return sources.batch(this.argumentLimit);
+    }
+
+    /**
+     * Creates one task for each of the given source batches.
+     */
+    private List<Callable<Report>> createTasks(List<SourceList> batches, RuleSets ruleSets) {
+        List<Callable<Report>> tasks = new ArrayList<Callable<Report>>(batches.size());
+        for (SourceList sources : batches) {
+            tasks.add(this.createTask(sources, ruleSets));
+        }
+        return tasks;
+    }
+
+    /**
+     * Creates a task that runs a phpmd process for the given sources and rule
+     * sets and isolates the files that exceed a configured timeout.
+     */
+    private Callable<Report> createTask(final SourceList sources, final RuleSets ruleSets) {
+        return new Callable<Report>() {
+            public Report call() {
+                return runIsolating(sources, ruleSets);
+            }
+        };
+    }
+
+    /**
+     * Runs a single phpmd process for the given sources. When the process
+     * exceeds a configured timeout, the source files are split into two
+     * halves of roughly the same byte size, which are analyzed again, until
+     * the files that exceed the timeout on their own are isolated. These files
+     * are recorded as timed out in the returned report, while the violations
+     * of all other files are kept.
+     */
+    private Report runIsolating(SourceList sources, RuleSets ruleSets) {
+        try {
+            return this.run(sources, ruleSets);
+        } catch (ProcessTimeoutException ex) {
+            SourceManifest manifest = this.discovery.discover(sources);
+            List<SourceList> halves = manifest.partition(2, SourceList.Partitioning.BYTE_SIZE);
+
+            Report report = new Report();
+            if (halves.size() < 2) {
+                for (File file : manifest.getFiles()) {
+                    report.addTimedOutFile(file.getPath());
+                }
+                return report;
+            }
+            for (SourceList half : halves) {
+                report.merge(this.runIsolating(half, ruleSets));
+            }
+            return report;
+        }
+    }
+
+    private boolean hasTimeout() {
+        return (this.timeoutNanos > 0 || this.idleTimeoutNanos > 0);
+    }
+
+    private void applyTimeouts(ProcessExecutable script) {
+        script.setTimeout(this.timeoutNanos, TimeUnit.NANOSECONDS);
+        script.setIdleTimeout(this.idleTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs a single phpmd process for the given sources and rule sets.
+     */
+    Report run(SourceList sources, RuleSets ruleSets) {
+        if (this.workerPool != null) {
+            Report report = new Report();
+            this.workerPool.run(sources, ruleSets, this.priority, report);
+            return report;
+        }
+
+        ReportFormat xml = new ReportFormat(ReportFormat.FORMAT_XML);
+
+        long validateStart = System.nanoTime();
+        ReportExecutable script = new ReportExecutable(this.executable);
+        this.prepareExecutable(script, sources, xml, ruleSets);
+        this.applyTimeouts(script);
+
+        long spawnStart = System.nanoTime();
+        script.exec();
+        this.complete(script, spawnStart - validateStart, spawnStart);
+
+        Report report = script.getReport();
+        if (!isRegularExitCode(script.exitCode()) || !script.isComplete()) {
+            report.markIncomplete();
+        }
+        return report;
+    }
+
+    /**
+     * Combines the exit codes of two batches of the same run. The first
+     * error code wins, otherwise violations found in any batch win over
+     * success.
+     */
+    static Integer mergeExitCodes(Integer exitCode, Integer batchExitCode) {
+        if (!isRegularExitCode(exitCode)) {
+            return exitCode;
+        }
+        if (!isRegularExitCode(batchExitCode) || EXIT_CODE_SUCCESS.equals(exitCode)) {
+            return batchExitCode;
+        }
+        return exitCode;
+    }
+
+    /**
+     * Tests if the given exit code signals a phpmd run that finished with or
+     * without violations.
+     */
+    private static boolean isRegularExitCode(Integer exitCode) {
+        return (EXIT_CODE_SUCCESS.equals(exitCode) || EXIT_CODE_VIOLATION.equals(exitCode));
+    }
+
     private Executable prepare(Executable executable) {
         if (this.nonBlocking) {
             return new NonBlockingExecutable(executable);
@@ -156,6 +1089,40 @@ public class Phpmd {
         this.addRuleSet(new RuleSet(ruleSet));
     }
 
+    /**
+     * Excludes all source files and directories that match the given glob
+     * pattern. Excluded files are filtered on the Java side and never reach
+     * phpmd.
+     *
+     * @param glob The exclude pattern.
+     *
+     * @see SourceDiscovery
+     */
+    public void addExclude(String glob) {
+        this.discovery.addExclude(glob);
+    }
+
+    /**
+     * Sets the file extensions of the analyzed source files, without a
+     * leading dot.
+     *
+     * @param suffixes The accepted file extensions.
+     */
+    public void setSuffixes(String... suffixes) {
+        this.discovery.setSuffixes(suffixes);
+    }
+
+    /**
+     * Discovers all source files that will be analyzed by a phpmd run with
+     * the current configuration.
+     *
+     * @return The manifest of all analyzed source files.
+     */
+    public SourceManifest discoverSources() {
+        this.sourceList.validate();
+        return this.discovery.discover(this.sourceList);
+    }
+
     /**
      * Adds a rule set that will be applied against the checked source code.
      *
@@ -204,6 +1171,143 @@ public class Phpmd {
         this.priority = priority;
     }
 
+    /**
+     * Enables a persistent cache for the violations of single source files,
+     * so that {@link #run()} only analyzes those files that have changed
+     * since the last run.
+     *
+     * @param directory Root directory of the cache.
+     */
+    public void setCacheDirectory(File directory) {
+        this.setCache(new ReportCache(directory));
+    }
+
+    /**
+     * Sets the cache used for the violations of single source files. Pass
+     * <b>null</b> to disable caching.
+     *
+     * @param cache The report cache instance.
+     */
+    public void setCache(ReportCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets a pool of long running phpmd workers that will be used instead of
+     * starting a new phpmd process for each xml report run. Pass <b>null</b>
+     * to start a new process for each run again.
+     *
+     * @param workerPool The worker pool instance.
+     */
+    public void setWorkerPool(PhpmdWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Sets a baseline of known violations. Subsequent runs only report those
+     * violations that are not part of the baseline. Pass <b>null</b> to report
+     * all violations again.
+     *
+     * @param baseline The baseline of known violations.
+     */
+    public void setBaseline(Baseline baseline) {
+        this.baseline = baseline;
+    }
+
+    /**
+     * Sets a store of per file analysis durations. Sharded runs then pack the
+     * source files by their recorded durations onto the workers, which steal
+     * queued work from each other, and record the durations of the run for
+     * later runs. Pass <b>null</b> to partition sharded runs by byte size
+     * again.
+     *
+     * @param durations The duration store.
+     */
+    public void setDurationStore(DurationStore durations) {
+        this.durations = durations;
+    }
+
+    /**
+     * Sets the listener that receives the metrics of each phpmd process run.
+     * Pass <b>null</b> to disable the listener.
+     *
+     * @param metricsListener The metrics listener.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        if (metricsListener == null) {
+            metricsListener = new MetricsAdapter();
+        }
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Returns the metrics of the last phpmd process started by this instance,
+     * or <b>null</b> when no process was started yet. Runs served by a worker
+     * pool do not start a process and non-blocking runs do not wait for its
+     * end, both produce no metrics.
+     *
+     * @return The metrics of the last process run.
+     */
+    public RunMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the maximum length in bytes of the comma separated source argument
+     * passed to a single phpmd process. Larger source lists are split into
+     * batches that are analyzed by separate processes, whose reports get
+     * merged. Pass <b>0</b> to always start a single process. Report file
+     * runs and asynchronous runs are never split.
+     *
+     * @param argumentLimit The maximum argument length in bytes.
+     */
+    public void setArgumentLimit(int argumentLimit) {
+        this.argumentLimit = argumentLimit;
+    }
+
+    /**
+     * Sets the maximum number of phpmd processes that analyze the batches of
+     * an oversized source list at the same time. The default of <b>1</b>
+     * analyzes the batches one after another. Runs that pass each violation
+     * to a listener always analyze the batches one after another.
+     *
+     * @param batchConcurrency The maximum number of concurrent processes.
+     */
+    public void setBatchConcurrency(int batchConcurrency) {
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    /**
+     * Sets the maximum wall clock time of a single phpmd process. A process
+     * that runs longer is destroyed together with its child processes. Report
+     * runs then split the sources of the process in halves and analyze them
+     * again, until the slow files are isolated; these are listed by
+     * {@link Report#getTimedOutFiles()}. Listener, report file and
+     * asynchronous runs fail with a {@link ProcessTimeoutException} instead.
+     * Pass <b>0</b> for no limit. Runs served by a worker pool and runs
+     * through {@link #run(ReportFile)} are not limited.
+     *
+     * @param timeout The maximum run time of a process.
+     * @param unit    The unit of the run time.
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Sets the maximum time a single phpmd process may run without writing
+     * any output. Such a process is handled like one that exceeded its wall
+     * clock timeout. Pass <b>0</b> for no limit.
+     *
+     * @param timeout The maximum idle time of a process.
+     * @param unit    The unit of the idle time.
+     *
+     * @see #setTimeout(long, TimeUnit)
+     */
+    public void setIdleTimeout(long timeout, TimeUnit unit) {
+        this.idleTimeoutNanos = unit.toNanos(timeout);
+    }
+
     /**
      * Configures this phpmd instance to run blocking. This means phpmd will not
      * run in a separate thread.
@@ -225,11 +1329,55 @@ public class Phpmd {
     }
 
     private Executable prepareExecutable(Executable script) {
-        return script.addArgument(this.sourceList)
-                .addArgument(this.format)
-                .addArgument(this.ruleSets)
+        return this.prepareExecutable(script, this.getSources(), this.format, this.ruleSets);
+    }
+
+    /**
+     * Returns the sources passed to phpmd. When the source discovery filters
+     * the sources, these are the discovered files, otherwise the configured
+     * sources, so that phpmd can walk the directories itself.
+     */
+    private SourceList getSources() {
+        if (!this.discovery.isFiltering()) {
+            return this.sourceList;
+        }
+        this.sourceList.validate();
+        return this.discovery.discover(this.sourceList).toSourceList();
+    }
+
+    private Executable prepareExecutable(
+            Executable script,
+            SourceList sources,
+            ReportFormat format,
+            RuleSets ruleSets) {
+
+        return script.addArgument(sources)
+                .addArgument(format)
+                .addArgument(ruleSets)
                 .addArgument(this.priority)
                 .addRegularExitCode(EXIT_CODE_SUCCESS)
                 .addRegularExitCode(EXIT_CODE_VIOLATION);
     }
+
+    /**
+     * Future that destroys the phpmd process of its executable when it gets
+     * cancelled.
+     */
+    private static class ProcessFuture<T> extends CompletableFuture<T> {
+
+        private ProcessExecutable script = null;
+
+        private ProcessFuture(ProcessExecutable script) {
+            this.script = script;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                this.script.destroy();
+            }
+            return cancelled;
+        }
+    }
 }
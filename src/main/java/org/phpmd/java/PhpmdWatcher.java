@@ -0,0 +1,519 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a report up to date while the analyzed sources change. The watcher
+ * monitors all directories below the configured sources with a
+ * {@link WatchService} and collects the changed source files until no further
+ * change occurred for the debounce interval, so that a burst of events, as
+ * caused by saving many files or switching a branch, results in a single
+ * phpmd run. Only the changed files are analyzed again; their previous
+ * violations are replaced in the live report and the differences are passed
+ * to all registered {@link WatchListener}s.
+ *
+ * A watcher is created and started by {@link Phpmd#watch()}. The latency of
+ * an update is the debounce interval plus the time phpmd needs for the
+ * changed files, so a {@link PhpmdWorkerPool} configured on the phpmd
+ * instance keeps it low by avoiding the startup of a new process.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class PhpmdWatcher implements Closeable {
+
+    /**
+     * Default debounce interval in milliseconds.
+     */
+    public static final long DEFAULT_DEBOUNCE = 200;
+
+    /**
+     * The phpmd instance used to analyze changed files.
+     */
+    private Phpmd phpmd = null;
+
+    /**
+     * Filters the changed files like the discovery of a regular run.
+     */
+    private SourceDiscovery discovery = null;
+
+    /**
+     * Absolute paths of the watched source roots.
+     */
+    private List<Path> roots = new ArrayList<Path>();
+
+    /**
+     * Time without further changes before changed files are analyzed.
+     */
+    private long debounceNanos = 0;
+
+    /**
+     * The live report.
+     */
+    private Report report = null;
+
+    /**
+     * Registered report listeners.
+     */
+    private List<WatchListener> listeners = new CopyOnWriteArrayList<WatchListener>();
+
+    private WatchService watchService = null;
+
+    /**
+     * The watched directory of each watch key.
+     */
+    private Map<WatchKey, Path> directories = new ConcurrentHashMap<WatchKey, Path>();
+
+    /**
+     * Changed files that were not analyzed yet.
+     */
+    private Set<Path> pending = new HashSet<Path>();
+
+    /**
+     * Deleted or moved paths that may have been directories, whose
+     * violations were not removed yet. Guarded by the lock of the pending
+     * files.
+     */
+    private Set<Path> deleted = new HashSet<Path>();
+
+    /**
+     * The scheduled analysis of the pending files.
+     */
+    private ScheduledFuture<?> update = null;
+
+    private ScheduledExecutorService scheduler = null;
+
+    /**
+     * Thread that receives the file system events.
+     */
+    private Thread thread = null;
+
+    private volatile boolean closed = false;
+
+    PhpmdWatcher(Phpmd phpmd, SourceList sources, SourceDiscovery discovery, long debounce, TimeUnit unit) {
+        this.phpmd = phpmd;
+        this.discovery = discovery;
+        this.debounceNanos = unit.toNanos(debounce);
+
+        for (Source source : sources.getSources()) {
+            this.roots.add(new File(source.getFileOrDirectory()).toPath().toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * Registers the watched directories, analyzes all sources once and starts
+     * watching for changes afterwards. Changes that occur during the initial
+     * analysis are not lost, because the directories are registered first.
+     */
+    void start() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (Path root : this.roots) {
+            if (Files.isDirectory(root)) {
+                this.register(root, root, null);
+            } else if (root.getParent() != null) {
+                this.register(root.getParent());
+            }
+        }
+
+        this.report = this.phpmd.run();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "phpmd-watch-update");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        this.thread = new Thread("phpmd-watch") {
+            @Override
+            public void run() {
+                receive();
+            }
+        };
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Returns the live report. Each update replaces the violations of the
+     * changed files while holding the lock of the report.
+     *
+     * @return The live report.
+     */
+    public Report getReport() {
+        return this.report;
+    }
+
+    /**
+     * Adds a listener that will be notified about each change of the report.
+     *
+     * @param listener The report listener.
+     */
+    public void addListener(WatchListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously added report listener.
+     *
+     * @param listener The report listener.
+     */
+    public void removeListener(WatchListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Stops watching the sources. Pending changes are discarded.
+     */
+    public void close() throws IOException {
+        this.closed = true;
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+        this.watchService.close();
+    }
+
+    /**
+     * Receives the file system events until this watcher gets closed.
+     */
+    private void receive() {
+        while (!this.closed) {
+            WatchKey key;
+            try {
+                key = this.watchService.take();
+            } catch (InterruptedException ex) {
+                return;
+            } catch (ClosedWatchServiceException ex) {
+                return;
+            }
+
+            Path directory = this.directories.get(key);
+            if (directory != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        this.changedAll();
+                    } else {
+                        this.changed(directory.resolve((Path) event.context()), event.kind());
+                    }
+                }
+            }
+            if (!key.reset()) {
+                this.directories.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Handles the event for a single path. A deleted path can no longer be
+     * told apart from a deleted directory, so the violations of all files
+     * below it are removed with the next update as well.
+     */
+    private void changed(Path path, WatchEvent.Kind<?> kind) {
+        Path root = this.getRoot(path);
+        if (root == null) {
+            return;
+        }
+
+        if (Files.isDirectory(path)) {
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE
+                    && !this.discovery.isExcludedDirectory(root, path)) {
+
+                List<Path> files = new ArrayList<Path>();
+                this.register(root, path, files);
+                this.schedule(files);
+            }
+            return;
+        }
+
+        boolean deleted = (kind == StandardWatchEventKinds.ENTRY_DELETE && !Files.exists(path));
+        if (deleted) {
+            synchronized (this.pending) {
+                this.deleted.add(path);
+            }
+        }
+
+        List<Path> files = new ArrayList<Path>();
+        if (path.equals(root) || this.discovery.isSourcePath(root, path)) {
+            files.add(path);
+        }
+        if (deleted || !files.isEmpty()) {
+            this.schedule(files);
+        }
+    }
+
+    /**
+     * Marks all source files as changed, after the watch service has lost
+     * events.
+     */
+    private void changedAll() {
+        SourceList sources = new SourceList();
+        for (Path root : this.roots) {
+            sources.add(new Source(root.toFile()));
+        }
+
+        List<Path> files = new ArrayList<Path>();
+        for (File file : this.discovery.discover(sources).getFiles()) {
+            files.add(file.toPath().toAbsolutePath());
+        }
+        this.schedule(files);
+    }
+
+    /**
+     * Adds the given files to the pending files and restarts the debounce
+     * interval.
+     */
+    private void schedule(List<Path> files) {
+        synchronized (this.pending) {
+            this.pending.addAll(files);
+            if ((this.pending.isEmpty() && this.deleted.isEmpty()) || this.closed) {
+                return;
+            }
+            if (this.update != null) {
+                this.update.cancel(false);
+            }
+            this.update = this.scheduler.schedule(new Runnable() {
+                public void run() {
+                    update();
+                }
+            }, this.debounceNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Analyzes the pending files again and patches the live report. The
+     * violations of all files below a deleted directory are removed. When
+     * the analysis fails, returns an incomplete report or times out for a
+     * file, the live report is left unchanged, the files are kept pending for
+     * the next update and the listeners are notified about the failure.
+     */
+    private void update() {
+        Set<Path> files;
+        Set<Path> directories;
+        synchronized (this.pending) {
+            files = new HashSet<Path>(this.pending);
+            directories = new HashSet<Path>(this.deleted);
+            this.pending.clear();
+            this.deleted.clear();
+            this.update = null;
+        }
+
+        SourceList existing = new SourceList();
+        Set<String> fileNames = new LinkedHashSet<String>();
+        for (Path file : files) {
+            fileNames.add(this.getCanonicalPath(file.toFile()));
+            if (Files.isRegularFile(file)) {
+                existing.add(new Source(file.toFile()));
+            }
+        }
+
+        Report current;
+        try {
+            current = (existing.getSources().isEmpty() ? new Report() : this.phpmd.analyze(existing));
+        } catch (RuntimeException ex) {
+            this.failed(files, directories, ex);
+            return;
+        }
+        if (!current.isComplete()) {
+            this.failed(files, directories, new IllegalStateException("Cannot read the complete phpmd report."));
+            return;
+        }
+        if (!current.getTimedOutFiles().isEmpty()) {
+            this.failed(files, directories, new IllegalStateException("phpmd timed out for " + current.getTimedOutFiles() + "."));
+            return;
+        }
+
+        List<RuleViolation> removed = new ArrayList<RuleViolation>();
+        List<RuleViolation> added = new ArrayList<RuleViolation>(current.getRuleViolations());
+        synchronized (this.report) {
+            for (Path directory : directories) {
+                fileNames.addAll(this.getFileNamesBelow(directory));
+            }
+            for (String fileName : fileNames) {
+                removed.addAll(this.report.removeRuleViolations(fileName));
+            }
+            for (RuleViolation violation : added) {
+                this.report.addRuleViolation(violation);
+            }
+        }
+
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        for (WatchListener listener : this.listeners) {
+            listener.reportChanged(added, removed);
+        }
+    }
+
+    /**
+     * Puts the files of a failed update back into the pending files, without
+     * scheduling a new update, and notifies the listeners.
+     */
+    private void failed(Set<Path> files, Set<Path> directories, RuntimeException ex) {
+        synchronized (this.pending) {
+            this.pending.addAll(files);
+            this.deleted.addAll(directories);
+        }
+
+        List<File> failed = new ArrayList<File>(files.size());
+        for (Path file : files) {
+            failed.add(file.toFile());
+        }
+        for (WatchListener listener : this.listeners) {
+            listener.updateFailed(failed, ex);
+        }
+    }
+
+    /**
+     * Returns the names of all files in the live report that are located
+     * below the given directory. Must be called with the lock of the report.
+     */
+    private Set<String> getFileNamesBelow(Path directory) {
+        String prefix = this.getCanonicalPath(directory.toFile()) + File.separator;
+
+        Set<String> fileNames = new HashSet<String>();
+        for (RuleViolation violation : this.report.getRuleViolations()) {
+            if (violation.getFileName().startsWith(prefix)) {
+                fileNames.add(violation.getFileName());
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * Returns the source root that covers the given path.
+     */
+    private Path getRoot(Path path) {
+        for (Path root : this.roots) {
+            if (path.startsWith(root)) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers the given directory and all not excluded directories below
+     * it. The source files found below the directory are added to the given
+     * list, when it is not <b>null</b>.
+     */
+    private void register(final Path root, Path directory, final List<Path> files) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+                        throws IOException {
+
+                    if (!dir.equals(root) && discovery.isExcludedDirectory(root, dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    register(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (files != null && attributes.isRegularFile() && discovery.isSourcePath(root, file)) {
+                        files.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+        }
+    }
+
+    private void register(Path directory) throws IOException {
+        WatchKey key = directory.register(
+                this.watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE
+        );
+        this.directories.put(key, directory);
+    }
+
+    private String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import de.xplib.execution.ValidationException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A single long running phpmd worker process. The worker reads analysis
+ * requests line by line from its stdin and answers each of them with a
+ * length prefixed xml report on its stdout, so that the php interpreter and
+ * phpmd are only loaded once for many analysis runs.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class PhpmdWorker {
+
+    /**
+     * Health check request and its expected response.
+     */
+    private static final String REQUEST_PING = "PING",
+                                RESPONSE_PONG = "PONG";
+
+    /**
+     * Prefixes of the possible analysis responses.
+     */
+    private static final String RESPONSE_OK = "OK ",
+                                RESPONSE_ERROR = "ERROR ";
+
+    /**
+     * Separator between the fields of an analysis request.
+     */
+    private static final char REQUEST_SEPARATOR = '\t';
+
+    /**
+     * The worker process.
+     */
+    private Process process = null;
+
+    /**
+     * Buffered stdout of the worker process.
+     */
+    private InputStream input = null;
+
+    /**
+     * Stdin of the worker process.
+     */
+    private OutputStream output = null;
+
+    /**
+     * Number of analysis requests served by this worker.
+     */
+    private int jobs = 0;
+
+    /**
+     * Time of the last request sent to this worker.
+     */
+    private long lastUsed = 0;
+
+    /**
+     * Starts a new worker process for the given command.
+     *
+     * @param command The command line of the worker process.
+     *
+     * @throws IOException If the process cannot be started.
+     */
+    public PhpmdWorker(List<String> command) throws IOException {
+        this.process = new ProcessBuilder(command).start();
+        this.input = new BufferedInputStream(this.process.getInputStream());
+        this.output = this.process.getOutputStream();
+        this.lastUsed = System.currentTimeMillis();
+
+        new StreamDrainer(this.process.getErrorStream()).start();
+    }
+
+    /**
+     * Returns the number of analysis requests served by this worker.
+     *
+     * @return The number of served requests.
+     */
+    public int getJobs() {
+        return this.jobs;
+    }
+
+    /**
+     * Returns the time in milliseconds since the last request was sent to
+     * this worker.
+     *
+     * @return The idle time in milliseconds.
+     */
+    public long getIdleTime() {
+        return System.currentTimeMillis() - this.lastUsed;
+    }
+
+    /**
+     * Tests if the worker process is still running.
+     *
+     * @return <b>true</b> when the process is running.
+     */
+    public boolean isAlive() {
+        try {
+            this.process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Sends a health check request to the worker process.
+     *
+     * @return <b>true</b> when the worker answered as expected.
+     */
+    public boolean ping() {
+        try {
+            this.send(REQUEST_PING);
+            return RESPONSE_PONG.equals(this.readLine());
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Lets the worker analyze the given sources and passes all reported rule
+     * violations to the given listener. A worker should not be used again,
+     * when this method has thrown an exception.
+     *
+     * @param sources  The analyzed sources.
+     * @param ruleSets The applied rule sets.
+     * @param priority The minimum priority of reported violations.
+     * @param listener Listener that receives the rule violations.
+     *
+     * @return The number of reported rule violations.
+     *
+     * @throws IOException If the communication with the worker failed,
+     *         the worker reported an error or its report was incomplete.
+     * @throws ValidationException When a source or rule set name contains a
+     *         tab or a line break.
+     */
+    public int analyze(
+            SourceList sources,
+            RuleSets ruleSets,
+            Priority priority,
+            final ViolationListener listener) throws IOException {
+
+        validateRequest(sources, ruleSets);
+
+        ++this.jobs;
+        this.send(
+                sources.sourcesToString()
+                + REQUEST_SEPARATOR + ruleSets.ruleSetsToString()
+                + REQUEST_SEPARATOR + priority.getPriority()
+        );
+
+        String response = this.readLine();
+        if (response == null) {
+            throw new IOException("The phpmd worker terminated unexpectedly.");
+        }
+        if (response.startsWith(RESPONSE_ERROR)) {
+            throw new IOException(response.substring(RESPONSE_ERROR.length()));
+        }
+        if (!response.startsWith(RESPONSE_OK)) {
+            throw new IOException("Unexpected phpmd worker response '" + response + "'.");
+        }
+
+        final int[] count = {0};
+        InputStream report = new BoundedInputStream(
+                this.input,
+                Long.parseLong(response.substring(RESPONSE_OK.length()))
+        );
+        boolean complete = new ReportParser().parse(report, new ViolationListener() {
+            public void ruleViolation(RuleViolation violation) {
+                ++count[0];
+                listener.ruleViolation(violation);
+            }
+        });
+        report.close();
+
+        if (!complete) {
+            throw new IOException("The phpmd worker sent an incomplete report.");
+        }
+        return count[0];
+    }
+
+    /**
+     * Validates that the given sources and rule sets can be sent to a worker.
+     * The fields of a request are separated by tabs and each request ends
+     * with a line break, so these characters are not allowed in the source
+     * and rule set names.
+     *
+     * @param sources  The analyzed sources.
+     * @param ruleSets The applied rule sets.
+     *
+     * @throws ValidationException When a source or rule set name contains a
+     *         tab or a line break.
+     */
+    static void validateRequest(SourceList sources, RuleSets ruleSets) {
+        for (String value : new String[] {sources.sourcesToString(), ruleSets.ruleSetsToString()}) {
+            if (value.indexOf(REQUEST_SEPARATOR) != -1
+                    || value.indexOf('\n') != -1
+                    || value.indexOf('\r') != -1) {
+                throw new ValidationException(
+                        "The phpmd worker cannot analyze names with tabs or line breaks: '" + value + "'."
+                );
+            }
+        }
+    }
+
+    /**
+     * Terminates the worker process.
+     */
+    public void destroy() {
+        this.process.destroy();
+    }
+
+    private void send(String request) throws IOException {
+        this.lastUsed = System.currentTimeMillis();
+        this.output.write((request + "\n").getBytes("UTF-8"));
+        this.output.flush();
+    }
+
+    /**
+     * Reads a single response line from the worker's stdout without reading
+     * ahead into a following report.
+     */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = this.input.read(); b != '\n'; b = this.input.read()) {
+            if (b == -1) {
+                return null;
+            }
+            line.write(b);
+        }
+        return line.toString("UTF-8").trim();
+    }
+
+    /**
+     * Input stream that returns only a limited number of bytes from the
+     * wrapped stream. Closing this stream skips the unread bytes, but does not
+     * close the wrapped stream.
+     */
+    static class BoundedInputStream extends InputStream {
+
+        private InputStream stream = null;
+
+        private long remaining = 0;
+
+        BoundedInputStream(InputStream stream, long length) {
+            this.stream = stream;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int b = this.stream.read();
+            if (b != -1) {
+                --this.remaining;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int n = this.stream.read(buffer, offset, (int) Math.min(length, this.remaining));
+            if (n > 0) {
+                this.remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            while (this.remaining > 0) {
+                long n = this.stream.skip(this.remaining);
+                if (n <= 0 && this.read() == -1) {
+                    throw new IOException("The phpmd worker terminated unexpectedly.");
+                }
+                this.remaining -= Math.max(0, n);
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import de.xplib.execution.ValidationException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Pool of long running phpmd worker processes. Instead of starting a new
+ * phpmd process for every analysis, this pool keeps its workers alive and
+ * reuses them for subsequent requests. Requests that arrive while all workers
+ * are busy wait in the order of their arrival. Idle workers are health checked
+ * before reuse and each worker is recycled after a configurable number of
+ * requests, to limit the effects of memory leaks within php.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class PhpmdWorkerPool {
+
+    /**
+     * Default name of the php command line executable.
+     */
+    public static final String DEFAULT_PHP = "php";
+
+    /**
+     * Default number of requests a worker serves before it gets recycled.
+     */
+    public static final int DEFAULT_MAX_JOBS = 100;
+
+    /**
+     * Default idle time in milliseconds after which a worker is health checked
+     * before its next use.
+     */
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 30000;
+
+    /**
+     * Name of the bundled worker script.
+     */
+    private static final String WORKER_SCRIPT = "phpmd-worker.php";
+
+    /**
+     * Size of the buffer used to extract the worker script.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Limits the number of concurrently running workers.
+     */
+    private Semaphore permits = null;
+
+    /**
+     * Idle workers, the most recently used worker first.
+     */
+    private BlockingDeque<PhpmdWorker> idle = new LinkedBlockingDeque<PhpmdWorker>();
+
+    /**
+     * The used php executable.
+     */
+    private String php = DEFAULT_PHP;
+
+    /**
+     * Optional php include path that contains phpmd.
+     */
+    private String includePath = null;
+
+    /**
+     * Number of requests a worker serves before it gets recycled.
+     */
+    private int maxJobs = DEFAULT_MAX_JOBS;
+
+    /**
+     * Idle time after which a worker is health checked.
+     */
+    private long healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+
+    /**
+     * The extracted worker script.
+     */
+    private File script = null;
+
+    /**
+     * Was this pool closed?
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a new pool with the given maximum number of workers.
+     *
+     * @param size The maximum number of concurrently running workers.
+     *
+     * @throws ValidationException When the size is not greater than zero.
+     */
+    public PhpmdWorkerPool(int size) {
+        if (size <= 0) {
+            throw new ValidationException("The size of a phpmd worker pool must be greater than zero.");
+        }
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Sets the php executable used to start the workers.
+     *
+     * @param php Name or path of the php executable.
+     */
+    public void setPhpExecutable(String php) {
+        this.php = php;
+    }
+
+    /**
+     * Sets the php include path that contains phpmd, when phpmd is not on
+     * the default include path of the php executable.
+     *
+     * @param includePath The php include path.
+     */
+    public void setIncludePath(String includePath) {
+        this.includePath = includePath;
+    }
+
+    /**
+     * Sets the number of requests a worker serves before it gets recycled.
+     *
+     * @param maxJobs The maximum number of requests per worker.
+     */
+    public void setMaxJobsPerWorker(int maxJobs) {
+        this.maxJobs = maxJobs;
+    }
+
+    /**
+     * Sets the idle time after which a worker is health checked before its
+     * next use.
+     *
+     * @param healthCheckInterval The idle time in milliseconds.
+     */
+    public void setHealthCheckInterval(long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * Analyzes the given sources with a pooled worker and passes all reported
+     * rule violations to the given listener. This method blocks until a worker
+     * becomes available.
+     *
+     * @param sources  The analyzed sources.
+     * @param ruleSets The applied rule sets.
+     * @param priority The minimum priority of reported violations.
+     * @param listener Listener that receives the rule violations.
+     *
+     * @return The number of reported rule violations.
+     *
+     * @throws IllegalStateException If this pool was closed or the worker
+     *         failed to analyze the sources.
+     */
+    public int run(SourceList sources, RuleSets ruleSets, Priority priority, ViolationListener listener) {
+        sources.validate();
+        ruleSets.validate();
+        priority.validate();
+        PhpmdWorker.validateRequest(sources, ruleSets);
+
+        try {
+            this.permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a phpmd worker.");
+        }
+
+        try {
+            PhpmdWorker worker = this.borrow();
+            try {
+                int count = worker.analyze(sources, ruleSets, priority, listener);
+                this.release(worker);
+                return count;
+            } catch (IOException ex) {
+                worker.destroy();
+                throw new IllegalStateException(ex.getMessage(), ex);
+            } catch (RuntimeException ex) {
+                worker.destroy();
+                throw ex;
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot start phpmd worker: " + ex.getMessage(), ex);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Closes this pool and terminates all idle workers. Workers that are
+     * currently busy will be terminated when they have finished.
+     */
+    public void close() {
+        this.closed = true;
+        for (PhpmdWorker worker = this.idle.poll(); worker != null; worker = this.idle.poll()) {
+            worker.destroy();
+        }
+    }
+
+    private PhpmdWorker borrow() throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("The phpmd worker pool was closed.");
+        }
+        for (PhpmdWorker worker = this.idle.pollFirst(); worker != null; worker = this.idle.pollFirst()) {
+            if (this.isHealthy(worker)) {
+                return worker;
+            }
+            worker.destroy();
+        }
+        return new PhpmdWorker(this.createCommand());
+    }
+
+    private void release(PhpmdWorker worker) {
+        if (this.closed || worker.getJobs() >= this.maxJobs) {
+            worker.destroy();
+        } else {
+            this.idle.offerFirst(worker);
+        }
+    }
+
+    private boolean isHealthy(PhpmdWorker worker) {
+        if (!worker.isAlive()) {
+            return false;
+        }
+        return (worker.getIdleTime() < this.healthCheckInterval || worker.ping());
+    }
+
+    private List<String> createCommand() throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(this.php);
+        if (this.includePath != null) {
+            command.add("-d");
+            command.add("include_path=" + this.includePath);
+        }
+        command.add(this.getScript().getAbsolutePath());
+
+        return command;
+    }
+
+    /**
+     * Extracts the bundled worker script into a temporary file.
+     */
+    private synchronized File getScript() throws IOException {
+        if (this.script != null) {
+            return this.script;
+        }
+
+        File file = File.createTempFile("phpmd-worker", ".php");
+        file.deleteOnExit();
+
+        InputStream in = getClass().getResourceAsStream(WORKER_SCRIPT);
+        if (in == null) {
+            throw new IOException("Cannot find bundled " + WORKER_SCRIPT + ".");
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+
+        this.script = file;
+        return this.script;
+    }
+}
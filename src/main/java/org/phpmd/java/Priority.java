@@ -98,6 +98,15 @@ public class Priority implements Argument {
         this.priority = priority;
     }
 
+    /**
+     * Returns the configured priority value.
+     *
+     * @return The minimum priority.
+     */
+    public int getPriority() {
+        return this.priority;
+    }
+
     /**
      * Appends the required option and value to the given executable.
      *
@@ -0,0 +1,355 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import de.xplib.execution.AbstractExecutable;
+import de.xplib.execution.Executable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Base class for executables that keep a reference to their running process,
+ * so that another thread can destroy the process, for example when an
+ * asynchronous run was cancelled.
+ *
+ * An executable can limit the wall clock time of its process and the time
+ * the process may run without writing output. A shared watchdog thread
+ * destroys a process that exceeds one of these timeouts, and the run ends
+ * with a {@link ProcessTimeoutException}.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public abstract class ProcessExecutable extends AbstractExecutable {
+
+    /**
+     * Exit code returned when the process result is not available.
+     */
+    protected static final int ERROR_EXIT_CODE = 42;
+
+    /**
+     * Bounds for the interval in which the watchdog checks the timeouts.
+     */
+    private static final long MIN_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10),
+                              MAX_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Shared watchdog that checks the timeouts of all running processes.
+     */
+    private static ScheduledExecutorService watchdog = null;
+
+    /**
+     * The currently running process.
+     */
+    private Process process = null;
+
+    /**
+     * Was this executable destroyed?
+     */
+    private boolean destroyed = false;
+
+    /**
+     * Metrics of the last process run.
+     */
+    private RunMetrics metrics = new RunMetrics();
+
+    /**
+     * Time when the last process was handed to this executable.
+     */
+    private long startTime = 0;
+
+    /**
+     * Wall clock timeout in nanoseconds, zero means no timeout.
+     */
+    private long timeoutNanos = 0;
+
+    /**
+     * Idle output timeout in nanoseconds, zero means no timeout.
+     */
+    private long idleTimeoutNanos = 0;
+
+    /**
+     * Time of the last output read from the running process.
+     */
+    private volatile long lastActivity = 0;
+
+    /**
+     * The timeout that destroyed the last process, if any.
+     */
+    private ProcessTimeoutException timeout = null;
+
+    public ProcessExecutable(Executable executable) {
+        super(executable);
+    }
+
+    /**
+     * Sets the maximum wall clock time of the process. Pass <b>0</b> for no
+     * limit.
+     *
+     * @param timeout The maximum run time.
+     * @param unit    The unit of the run time.
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Sets the maximum time the process may run without writing any output
+     * to stdout or stderr. Pass <b>0</b> for no limit.
+     *
+     * @param timeout The maximum idle time.
+     * @param unit    The unit of the idle time.
+     */
+    public void setIdleTimeout(long timeout, TimeUnit unit) {
+        this.idleTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Destroys the running process and all processes started by it. When the
+     * process was not started yet, it will be destroyed immediately after its
+     * start.
+     */
+    public synchronized void destroy() {
+        this.destroyed = true;
+        if (this.process != null) {
+            destroyTree(this.process);
+        }
+    }
+
+    /**
+     * Tests if this executable was destroyed.
+     *
+     * @return <b>true</b> when {@link #destroy()} was called.
+     */
+    public synchronized boolean isDestroyed() {
+        return this.destroyed;
+    }
+
+    /**
+     * Returns the metrics of the last process run.
+     *
+     * @return The run metrics.
+     */
+    public RunMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} when the last process was handed
+     * to this executable, which is the end of the spawn phase.
+     *
+     * @return The process start time.
+     */
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    protected int doExecute(Process proc) {
+        this.startTime = System.nanoTime();
+        this.lastActivity = this.startTime;
+        synchronized (this) {
+            this.process = proc;
+            this.timeout = null;
+            if (this.destroyed) {
+                destroyTree(proc);
+            }
+        }
+
+        ScheduledFuture<?> check = this.scheduleWatchdog();
+        int exitCode;
+        try {
+            exitCode = this.execute(proc);
+
+            this.metrics.setDuration(RunMetrics.Phase.EXECUTION, System.nanoTime() - this.startTime);
+            this.metrics.setExitCode(exitCode);
+        } finally {
+            if (check != null) {
+                check.cancel(false);
+            }
+            synchronized (this) {
+                this.process = null;
+            }
+        }
+
+        synchronized (this) {
+            if (this.timeout != null) {
+                throw this.timeout;
+            }
+        }
+        return exitCode;
+    }
+
+    /**
+     * Wraps a stream of the running process, so that every read counts as
+     * activity for the idle timeout.
+     *
+     * @param stream A stream of the running process.
+     *
+     * @return The monitored stream.
+     */
+    protected InputStream monitor(InputStream stream) {
+        if (this.idleTimeoutNanos <= 0) {
+            return stream;
+        }
+        return new ActivityInputStream(stream);
+    }
+
+    /**
+     * Starts the periodic timeout check for the running process.
+     */
+    private ScheduledFuture<?> scheduleWatchdog() {
+        long shortest = this.timeoutNanos;
+        if (shortest <= 0 || (this.idleTimeoutNanos > 0 && this.idleTimeoutNanos < shortest)) {
+            shortest = this.idleTimeoutNanos;
+        }
+        if (shortest <= 0) {
+            return null;
+        }
+
+        long interval = Math.max(MIN_CHECK_INTERVAL, Math.min(MAX_CHECK_INTERVAL, shortest / 10));
+        return getWatchdog().scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                checkTimeouts();
+            }
+        }, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    private void checkTimeouts() {
+        long now = System.nanoTime();
+        if (this.timeoutNanos > 0 && now - this.startTime > this.timeoutNanos) {
+            this.expire(new ProcessTimeoutException(false, this.timeoutNanos));
+        } else if (this.idleTimeoutNanos > 0 && now - this.lastActivity > this.idleTimeoutNanos) {
+            this.expire(new ProcessTimeoutException(true, this.idleTimeoutNanos));
+        }
+    }
+
+    private synchronized void expire(ProcessTimeoutException timeout) {
+        if (this.process != null && this.timeout == null) {
+            this.timeout = timeout;
+            destroyTree(this.process);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getWatchdog() {
+        if (watchdog == null) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "phpmd-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return watchdog;
+    }
+
+    /**
+     * Destroys the descendants of the given process and the process itself.
+     * Descendants are only known on Java 9 and later, where they are looked
+     * up through reflection; on older runtimes only the process itself is
+     * destroyed.
+     */
+    private static void destroyTree(Process process) {
+        try {
+            Method descendants = Process.class.getMethod("descendants");
+            Method destroyForcibly = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+
+            Iterator<?> it = ((Stream<?>) descendants.invoke(process)).iterator();
+            while (it.hasNext()) {
+                destroyForcibly.invoke(it.next());
+            }
+        } catch (Exception ex) {
+        }
+        process.destroy();
+    }
+
+    /**
+     * Handles the output of the running process and waits for its end.
+     *
+     * @param proc The running process.
+     *
+     * @return The exit code of the process.
+     */
+    protected abstract int execute(Process proc);
+
+    /**
+     * Stream that records the time of each successful read as activity of
+     * the running process.
+     */
+    private class ActivityInputStream extends FilterInputStream {
+
+        private ActivityInputStream(InputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                lastActivity = System.nanoTime();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                lastActivity = System.nanoTime();
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exception thrown when a phpmd process was destroyed, because it exceeded
+ * its wall clock timeout or did not write any output within its idle timeout.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class ProcessTimeoutException extends RuntimeException {
+
+    /**
+     * Was the idle timeout exceeded instead of the wall clock timeout?
+     */
+    private boolean idle = false;
+
+    /**
+     * The exceeded timeout in nanoseconds.
+     */
+    private long timeoutNanos = 0;
+
+    public ProcessTimeoutException(boolean idle, long timeoutNanos) {
+        super(String.format(
+                "The phpmd process was destroyed after %s %d ms.",
+                (idle ? "no output for" : "running for"),
+                TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+        ));
+        this.idle = idle;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * Tests if the process was destroyed because of its idle timeout.
+     *
+     * @return <b>true</b> for an idle timeout, <b>false</b> for a wall clock
+     *         timeout.
+     */
+    public boolean isIdle() {
+        return this.idle;
+    }
+
+    /**
+     * Returns the exceeded timeout.
+     *
+     * @param unit The requested time unit.
+     *
+     * @return The exceeded timeout.
+     */
+    public long getTimeout(TimeUnit unit) {
+        return unit.convert(this.timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -44,6 +44,7 @@ package org.phpmd.java;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -55,15 +56,239 @@ import java.util.List;
  * @version   SVN: $Id$
  * @link      http://phpmd.org
  */
-public class Report {
+public class Report implements ViolationListener {
 
     private List<RuleViolation> violations = new ArrayList<RuleViolation>();
 
-    public void addRuleViolation(RuleViolation violation) {
+    /**
+     * Report scoped dictionary for the strings that repeat in many violations.
+     */
+    private StringPool strings = new StringPool();
+
+    /**
+     * Lazily built secondary indexes, reset whenever a violation is added.
+     */
+    private ReportIndex index = null;
+
+    /**
+     * Source files that could not be analyzed within the configured timeout.
+     */
+    private List<String> timedOutFiles = new ArrayList<String>();
+
+    /**
+     * Was this report read completely from successful phpmd runs?
+     */
+    private boolean complete = true;
+
+    /**
+     * Adds a rule violation to this report. The file, package, class, function,
+     * method, rule and rule set names of the violation will be replaced by the canonical
+     * instances of this report, so that each distinct value is only stored
+     * once, no matter how many violations share it. The given violation is
+     * changed in place and kept by this report, it is not copied.
+     *
+     * @param violation The rule violation to add.
+     */
+    public synchronized void addRuleViolation(RuleViolation violation) {
+        violation.setFileName(this.strings.intern(violation.getFileName()));
+        violation.setPackageName(this.strings.intern(violation.getPackageName()));
+        violation.setClassName(this.strings.intern(violation.getClassName()));
+        violation.setFunctionName(this.strings.intern(violation.getFunctionName()));
+        violation.setMethodName(this.strings.intern(violation.getMethodName()));
+        violation.setRule(this.strings.intern(violation.getRule()));
+        violation.setRuleSet(this.strings.intern(violation.getRuleSet()));
+        violation.setExternalInfoUrl(this.strings.intern(violation.getExternalInfoUrl()));
+
         this.violations.add(violation);
+        this.index = null;
+    }
+
+    /**
+     * Adds all rule violations of the given report to this report. The
+     * violations are not copied: their names are replaced in place by the
+     * canonical instances of this report, so that afterwards both reports
+     * share the same, rewritten violation instances.
+     *
+     * @param report The report to merge into this report.
+     */
+    public void merge(Report report) {
+        for (RuleViolation violation : report.getRuleViolations()) {
+            this.addRuleViolation(violation);
+        }
+        for (String fileName : report.getTimedOutFiles()) {
+            this.addTimedOutFile(fileName);
+        }
+        if (!report.isComplete()) {
+            this.markIncomplete();
+        }
+    }
+
+    /**
+     * Marks this report as incomplete, because a phpmd process that
+     * contributed to it failed or its report could not be read to the end.
+     */
+    synchronized void markIncomplete() {
+        this.complete = false;
+    }
+
+    /**
+     * Tests if all phpmd processes that contributed to this report succeeded
+     * and their reports were read to the end. Only the violations of a
+     * complete report can be cached.
+     *
+     * @return <b>true</b> for a complete report.
+     */
+    synchronized boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * Records a source file that could not be analyzed, because phpmd
+     * exceeded the configured timeout for it.
+     *
+     * @param fileName The name of the source file.
+     */
+    public synchronized void addTimedOutFile(String fileName) {
+        this.timedOutFiles.add(fileName);
+    }
+
+    /**
+     * Returns the source files that could not be analyzed within the
+     * configured timeout. This report contains no violations for them.
+     *
+     * @return The timed out source files.
+     */
+    public synchronized List<String> getTimedOutFiles() {
+        return Collections.unmodifiableList(new ArrayList<String>(this.timedOutFiles));
+    }
+
+    /**
+     * Adds a rule violation emitted by the {@link ReportParser} to this report.
+     *
+     * @param violation The rule violation read from the report.
+     */
+    public void ruleViolation(RuleViolation violation) {
+        this.addRuleViolation(violation);
+    }
+
+    /**
+     * Removes all violations of the given file from this report.
+     *
+     * @param fileName The name of the source file.
+     *
+     * @return The removed violations.
+     */
+    public synchronized List<RuleViolation> removeRuleViolations(String fileName) {
+        List<RuleViolation> removed = new ArrayList<RuleViolation>();
+        for (Iterator<RuleViolation> it = this.violations.iterator(); it.hasNext();) {
+            RuleViolation violation = it.next();
+            if (fileName.equals(violation.getFileName())) {
+                removed.add(violation);
+                it.remove();
+            }
+        }
+        if (!removed.isEmpty()) {
+            this.index = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns a read only copy of the violations of this report. The copy is
+     * not affected by violations that are added or removed later, so it can
+     * be iterated while other threads update this report.
+     *
+     * @return The violations of this report.
+     */
+    public synchronized List<RuleViolation> getRuleViolations() {
+        return Collections.unmodifiableList(new ArrayList<RuleViolation>(this.violations));
+    }
+
+    /**
+     * Returns a new report with those violations of this report whose
+     * priority is equal to or higher than the given minimum priority, so that
+     * a single run with the lowest priority can serve several thresholds.
+     * Violations with an unknown priority are always part of the result.
+     *
+     * @param minimum The minimum priority.
+     *
+     * @return The filtered report.
+     */
+    public Report filter(Priority minimum) {
+        return this.filter(minimum.getPriority());
+    }
+
+    /**
+     * Returns a new report with those violations of this report whose
+     * priority value is less than or equal to the given minimum priority.
+     *
+     * @param minimum The minimum priority value, where <b>1</b> is the
+     *        highest priority.
+     *
+     * @return The filtered report.
+     *
+     * @see #filter(Priority)
+     */
+    public Report filter(int minimum) {
+        Report report = new Report();
+        for (RuleViolation violation : this.getRuleViolations()) {
+            if (violation.getPriority() <= minimum) {
+                report.addRuleViolation(violation);
+            }
+        }
+        for (String fileName : this.getTimedOutFiles()) {
+            report.addTimedOutFile(fileName);
+        }
+        return report;
+    }
+
+    /**
+     * Returns the secondary indexes for the violations of this report. The
+     * returned index reflects the state of this report at the time of this
+     * call, it will not see violations added afterwards.
+     *
+     * @return The report index.
+     */
+    public synchronized ReportIndex getIndex() {
+        if (this.index == null) {
+            this.index = new ReportIndex(new ArrayList<RuleViolation>(this.violations));
+        }
+        return this.index;
+    }
+
+    /**
+     * Returns all violations of the given file.
+     *
+     * @param fileName The name of the source file.
+     *
+     * @return The matching violations.
+     */
+    public List<RuleViolation> getRuleViolationsByFile(String fileName) {
+        return this.getIndex().getByFile(fileName);
+    }
+
+    /**
+     * Returns all violations of the given rule.
+     *
+     * @param rule The name of the rule.
+     *
+     * @return The matching violations.
+     */
+    public List<RuleViolation> getRuleViolationsByRule(String rule) {
+        return this.getIndex().getByRule(rule);
     }
 
-    public List<RuleViolation> getRuleViolations() {
-        return Collections.unmodifiableList(this.violations);
+    /**
+     * Returns all violations of the given file that overlap with the given
+     * line range.
+     *
+     * @param fileName  The name of the source file.
+     * @param beginLine First line of the queried range.
+     * @param endLine   Last line of the queried range.
+     *
+     * @return The matching violations.
+     */
+    public List<RuleViolation> getRuleViolations(String fileName, int beginLine, int endLine) {
+        return this.getIndex().getByLines(fileName, beginLine, endLine);
     }
 }
@@ -0,0 +1,271 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent on-disk cache for the rule violations of single source files.
+ * Each cache entry is identified by a key that is computed from the content
+ * of the source file, the identity of the used rule sets and the minimum
+ * priority, so that an entry is never reused when one of these changes. The
+ * version of phpmd itself is not part of the key, so the cache directory
+ * should be cleared after a phpmd update.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class ReportCache {
+
+    /**
+     * Size of the buffer used to hash files.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Algorithm used to create the cache keys.
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * Version of the cached data, part of each key so that entries written
+     * without the priority and rule set of their violations are not reused.
+     */
+    private static final byte KEY_VERSION = 2;
+
+    /**
+     * Root directory of the cache.
+     */
+    private File directory = null;
+
+    /**
+     * Codec used to read and write the cache entries.
+     */
+    private ReportCodec codec = new ReportCodec();
+
+    /**
+     * Constructs a new cache that stores its entries in the given directory.
+     *
+     * @param directory Root directory of the cache.
+     */
+    public ReportCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates the cache key for the given source file analyzed with the given
+     * rule sets and minimum priority.
+     *
+     * @param file     The analyzed source file.
+     * @param ruleSets The used rule sets.
+     * @param priority The used minimum priority.
+     *
+     * @return The cache key or <b>null</b> when the file cannot be read.
+     */
+    public String createKey(File file, RuleSets ruleSets, Priority priority) {
+        try {
+            MessageDigest digest = this.createDigest();
+            digest.update(KEY_VERSION);
+            this.update(digest, file);
+
+            for (RuleSet ruleSet : ruleSets.getRuleSets()) {
+                digest.update((byte) 0);
+                digest.update(ruleSet.getFileOrIdentifier().getBytes("UTF-8"));
+
+                File ruleSetFile = new File(ruleSet.getFileOrIdentifier());
+                if (ruleSetFile.isFile()) {
+                    this.update(digest, ruleSetFile);
+                }
+            }
+            digest.update((byte) 0);
+            digest.update(String.valueOf(priority.getPriority()).getBytes("UTF-8"));
+
+            return this.toHex(digest.digest());
+        } catch (IOException ex) {
+        }
+        return null;
+    }
+
+    /**
+     * Loads the cached rule violations for the given key. The file name of
+     * each loaded violation is replaced with the canonical path of the given
+     * source file, because the same content can be cached for a different
+     * location.
+     *
+     * @param key  The cache key.
+     * @param file The source file the violations belong to.
+     *
+     * @return The cached violations or <b>null</b> when no entry exists.
+     */
+    public List<RuleViolation> load(String key, File file) {
+        if (key == null || !this.getEntry(key).isFile()) {
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(this.getEntry(key));
+
+            String fileName = this.getCanonicalPath(file);
+            List<RuleViolation> violations = new ArrayList<RuleViolation>();
+            for (RuleViolation rv : this.codec.read(in).getRuleViolations()) {
+                rv.setFileName(fileName);
+                violations.add(rv);
+            }
+            return violations;
+        } catch (IOException ex) {
+        } finally {
+            this.close(in);
+        }
+        return null;
+    }
+
+    /**
+     * Stores the given rule violations under the given key. The entry is
+     * written to a temporary file first and then moved into place, so that
+     * concurrent readers never see a partially written entry.
+     *
+     * @param key        The cache key.
+     * @param violations All violations of a single source file, can be empty.
+     */
+    public void store(String key, List<RuleViolation> violations) {
+        if (key == null) {
+            return;
+        }
+
+        File entry = this.getEntry(key);
+        if (!entry.getParentFile().exists() && !entry.getParentFile().mkdirs()) {
+            return;
+        }
+
+        Report report = new Report();
+        for (RuleViolation rv : violations) {
+            report.addRuleViolation(rv);
+        }
+
+        OutputStream out = null;
+        File temp = null;
+        try {
+            temp = File.createTempFile(key, ".tmp", entry.getParentFile());
+            out = new FileOutputStream(temp);
+            this.codec.write(report, out);
+            out.close();
+            out = null;
+
+            entry.delete();
+            if (temp.renameTo(entry)) {
+                temp = null;
+            }
+        } catch (IOException ex) {
+        } finally {
+            this.close(out);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private File getEntry(String key) {
+        return new File(new File(this.directory, key.substring(0, 2)), key);
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void update(MessageDigest digest, File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+        }
+    }
+}
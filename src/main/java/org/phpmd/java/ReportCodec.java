@@ -0,0 +1,310 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format for phpmd reports. All strings of a report are
+ * stored only once in a leading string table and each violation references
+ * them by their table index. Indexes and line numbers are written as
+ * variable length integers, so that a typical violation takes only a few
+ * bytes in addition to its unique strings.
+ *
+ * <pre>
+ * report    := magic version table violations
+ * magic     := 'P' 'M' 'D' 'R'
+ * version   := byte
+ * table     := varint (varint utf8-length utf8-bytes)*
+ * violations:= varint violation*
+ * violation := file package class function method rule description
+ *              beginline endline-delta ruleset externalinfourl priority
+ * </pre>
+ *
+ * String references are one based, the value zero encodes <b>null</b>. The
+ * rule set, external info url and priority were added in version 2, reports
+ * written in version 1 are still readable and have no such values.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class ReportCodec {
+
+    /**
+     * Magic bytes at the beginning of each encoded report.
+     */
+    private static final byte[] MAGIC = {'P', 'M', 'D', 'R'};
+
+    /**
+     * Version of the binary format.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Size of the stream buffers.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Upper bounds for the sizes read from an encoded report. They protect the
+     * reader against corrupted reports that would otherwise allocate huge
+     * arrays.
+     */
+    private static final int MAX_TABLE_SIZE = 1 << 24,
+                             MAX_STRING_LENGTH = 1 << 20,
+                             MAX_VIOLATIONS = 1 << 26;
+
+    /**
+     * Writes the given report to the given stream. The stream will be flushed
+     * but not closed. A report that exceeds the bounds of the reader is
+     * rejected before anything is written.
+     *
+     * @param report The report to write.
+     * @param stream The target stream.
+     *
+     * @throws IOException If an error occured while writing to the stream or
+     *         the report cannot be read back.
+     */
+    public void write(Report report, OutputStream stream) throws IOException {
+        List<RuleViolation> violations = report.getRuleViolations();
+        if (violations.size() > MAX_VIOLATIONS) {
+            throw new IOException("Cannot encode more than " + MAX_VIOLATIONS + " violations.");
+        }
+
+        Map<String, Integer> table = new LinkedHashMap<String, Integer>();
+        for (RuleViolation rv : violations) {
+            this.addString(table, rv.getFileName());
+            this.addString(table, rv.getPackageName());
+            this.addString(table, rv.getClassName());
+            this.addString(table, rv.getFunctionName());
+            this.addString(table, rv.getMethodName());
+            this.addString(table, rv.getRule());
+            this.addString(table, rv.getDescription());
+            this.addString(table, rv.getRuleSet());
+            this.addString(table, rv.getExternalInfoUrl());
+        }
+        if (table.size() > MAX_TABLE_SIZE) {
+            throw new IOException("Cannot encode more than " + MAX_TABLE_SIZE + " distinct strings.");
+        }
+
+        List<byte[]> encoded = new ArrayList<byte[]>(table.size());
+        for (String string : table.keySet()) {
+            byte[] bytes = string.getBytes("UTF-8");
+            if (bytes.length > MAX_STRING_LENGTH) {
+                throw new IOException("Cannot encode a string of " + bytes.length + " bytes.");
+            }
+            encoded.add(bytes);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        out.write(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+
+        this.writeVarInt(out, encoded.size());
+        for (byte[] bytes : encoded) {
+            this.writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        this.writeVarInt(out, violations.size());
+        for (RuleViolation rv : violations) {
+            this.writeString(out, table, rv.getFileName());
+            this.writeString(out, table, rv.getPackageName());
+            this.writeString(out, table, rv.getClassName());
+            this.writeString(out, table, rv.getFunctionName());
+            this.writeString(out, table, rv.getMethodName());
+            this.writeString(out, table, rv.getRule());
+            this.writeString(out, table, rv.getDescription());
+            this.writeVarInt(out, this.encodeZigZag(rv.getBeginLine()));
+            this.writeVarInt(out, this.encodeZigZag(rv.getEndLine() - rv.getBeginLine()));
+            this.writeString(out, table, rv.getRuleSet());
+            this.writeString(out, table, rv.getExternalInfoUrl());
+            this.writeVarInt(out, this.encodeZigZag(rv.getPriority()));
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads an encoded report from the given stream.
+     *
+     * @param stream The source stream.
+     *
+     * @return The decoded report.
+     *
+     * @throws IOException If the stream cannot be read or contains no valid
+     *         encoded report.
+     */
+    public Report read(InputStream stream) throws IOException {
+        Report report = new Report();
+        this.read(stream, report);
+        return report;
+    }
+
+    /**
+     * Reads an encoded report from the given stream and passes each decoded
+     * rule violation to the given listener.
+     *
+     * @param stream   The source stream.
+     * @param listener Listener that receives the decoded violations.
+     *
+     * @throws IOException If the stream cannot be read or contains no valid
+     *         encoded report.
+     */
+    public void read(InputStream stream, ViolationListener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("The stream does not contain an encoded report.");
+            }
+        }
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported report format version " + version + ".");
+        }
+
+        int size = this.readLength(in, MAX_TABLE_SIZE);
+        List<String> table = new ArrayList<String>(Math.min(size, BUFFER_SIZE) + 1);
+        table.add(null);
+        for (int i = 0; i < size; ++i) {
+            byte[] bytes = new byte[this.readLength(in, MAX_STRING_LENGTH)];
+            in.readFully(bytes);
+            table.add(new String(bytes, "UTF-8"));
+        }
+
+        for (int i = 0, n = this.readLength(in, MAX_VIOLATIONS); i < n; ++i) {
+            RuleViolation rv = new RuleViolation();
+            rv.setFileName(this.readString(in, table));
+            rv.setPackageName(this.readString(in, table));
+            rv.setClassName(this.readString(in, table));
+            rv.setFunctionName(this.readString(in, table));
+            rv.setMethodName(this.readString(in, table));
+            rv.setRule(this.readString(in, table));
+            rv.setDescription(this.readString(in, table));
+            rv.setBeginLine(this.decodeZigZag(this.readVarInt(in)));
+            rv.setEndLine(rv.getBeginLine() + this.decodeZigZag(this.readVarInt(in)));
+            if (version >= 2) {
+                rv.setRuleSet(this.readString(in, table));
+                rv.setExternalInfoUrl(this.readString(in, table));
+                rv.setPriority(this.decodeZigZag(this.readVarInt(in)));
+            }
+
+            listener.ruleViolation(rv);
+        }
+    }
+
+    private void addString(Map<String, Integer> table, String string) {
+        if (string != null && !table.containsKey(string)) {
+            table.put(string, table.size() + 1);
+        }
+    }
+
+    private void writeString(DataOutputStream out, Map<String, Integer> table, String string)
+            throws IOException {
+
+        this.writeVarInt(out, (string == null ? 0 : table.get(string)));
+    }
+
+    private String readString(DataInputStream in, List<String> table) throws IOException {
+        int index = this.readVarInt(in);
+        if (index < 0 || index >= table.size()) {
+            throw new IOException("Invalid string reference " + index + ".");
+        }
+        return table.get(index);
+    }
+
+    private int readLength(DataInputStream in, int max) throws IOException {
+        int length = this.readVarInt(in);
+        if (length < 0 || length > max) {
+            throw new IOException("Invalid length " + length + ".");
+        }
+        return length;
+    }
+
+    private void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    private int encodeZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private int decodeZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
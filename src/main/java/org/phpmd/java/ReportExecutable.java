@@ -42,8 +42,10 @@
 
 package org.phpmd.java;
 
-import de.xplib.execution.AbstractExecutable;
 import de.xplib.execution.Executable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  *
@@ -54,27 +56,169 @@ import de.xplib.execution.Executable;
  * @version   SVN: $Id$
  * @link      http://phpmd.org
  */
-public class ReportExecutable extends AbstractExecutable {
-
-    private static final int ERROR_EXIT_CODE = 42;
+public class ReportExecutable extends ProcessExecutable {
 
     private Report report = new Report();
 
+    /**
+     * Listener that receives the parsed rule violations.
+     */
+    private ViolationListener listener = null;
+
+    /**
+     * Summary that counts the parsed rule violations, or <b>null</b> when
+     * the violations are passed to the listener.
+     */
+    private ReportSummary summary = null;
+
+    /**
+     * Was the report of the last process read up to its end?
+     */
+    private boolean complete = false;
+
     public ReportExecutable(Executable executable) {
         super(executable);
+        this.listener = this.report;
+    }
+
+    /**
+     * Constructs an executable that passes every parsed rule violation to the
+     * given listener instead of collecting it in the report.
+     *
+     * @param executable The wrapped executable.
+     * @param listener   Listener that receives the parsed rule violations.
+     */
+    public ReportExecutable(Executable executable, ViolationListener listener) {
+        super(executable);
+        this.listener = listener;
+    }
+
+    /**
+     * Constructs an executable that only counts the rule violations in the
+     * given summary, without creating a rule violation object for each of
+     * them.
+     *
+     * @param executable The wrapped executable.
+     * @param summary    Summary that counts the parsed rule violations.
+     */
+    public ReportExecutable(Executable executable, ReportSummary summary) {
+        super(executable);
+        this.summary = summary;
     }
 
     public Report getReport() {
         return this.report;
     }
 
-    protected int doExecute(Process proc) {
+    /**
+     * Tests if the report of the last process was read up to its end. This
+     * is not the case when phpmd crashed or was killed while it was writing
+     * the report, or when it wrote no report at all.
+     *
+     * @return <b>true</b> when the whole report was read.
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * Parses the report from the process' stdout while phpmd is still running
+     * and drains stderr in a separate thread, so that the process can never
+     * block on a full pipe buffer. When the listener throws an exception the
+     * phpmd process will be destroyed and the exception is passed to the
+     * caller. When the calling thread is interrupted while it waits for the
+     * end of the process, the process is destroyed and the interrupt flag is
+     * restored. A blocking read of the report does not notice an interrupt.
+     *
+     * @param proc The running phpmd process.
+     *
+     * @return The exit code of the phpmd process.
+     */
+    protected int execute(Process proc) {
+        StreamDrainer errors = new StreamDrainer(this.monitor(proc.getErrorStream()));
+        errors.start();
+
+        CountingInputStream stream = new CountingInputStream(this.monitor(proc.getInputStream()));
+        CountingListener counter = new CountingListener(this.listener);
+
         int exitCode = ERROR_EXIT_CODE;
+        this.complete = false;
         try {
+            long parseStart = System.nanoTime();
+            int summarized = (this.summary == null ? 0 : this.summary.getViolations());
+            try {
+                if (this.summary == null) {
+                    this.complete = new ReportParser().parse(stream, counter);
+                } else {
+                    this.complete = new ReportParser().summarize(stream, this.summary);
+                    counter.count = this.summary.getViolations() - summarized;
+                }
+            } finally {
+                this.getMetrics().setDuration(RunMetrics.Phase.PARSE, System.nanoTime() - parseStart);
+                this.getMetrics().setBytesRead(stream.count);
+                this.getMetrics().setViolations(counter.count);
+            }
+
+            StreamDrainer.drain(proc.getInputStream());
+
             exitCode = proc.waitFor();
-            this.report = new ReportParser().parse(proc.getInputStream());
+            errors.join();
         } catch (InterruptedException ex) {
+            proc.destroy();
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            proc.destroy();
+            throw ex;
         }
         return exitCode;
     }
+
+    /**
+     * Stream that counts the number of bytes read from the wrapped stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        private CountingInputStream(InputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                ++this.count;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                this.count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Listener that counts the violations passed to the wrapped listener.
+     */
+    private static class CountingListener implements ViolationListener {
+
+        private ViolationListener listener = null;
+
+        private int count = 0;
+
+        private CountingListener(ViolationListener listener) {
+            this.listener = listener;
+        }
+
+        public void ruleViolation(RuleViolation violation) {
+            ++this.count;
+            this.listener.ruleViolation(violation);
+        }
+    }
 }
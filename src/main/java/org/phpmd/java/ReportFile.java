@@ -46,6 +46,7 @@ import de.xplib.execution.Argument;
 import de.xplib.execution.Executable;
 import de.xplib.execution.ValidationException;
 import java.io.File;
+import java.io.IOException;
 
 /**
  *
@@ -66,6 +67,38 @@ public class ReportFile implements Argument {
         this.file = file;
     }
 
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Parses this report file, which must contain an xml report.
+     *
+     * @return The parsed report.
+     *
+     * @throws IOException When the file cannot be read.
+     *
+     * @see ReportParser#parse(File)
+     */
+    public Report parse() throws IOException {
+        return new ReportParser().parse(this.file);
+    }
+
+    /**
+     * Parses this report file, which must contain an xml report, and passes
+     * each rule violation to the given listener, for example a
+     * {@link ReportWriter} that converts the report into another format.
+     *
+     * @param listener Listener that receives the parsed rule violations.
+     *
+     * @throws IOException When the file cannot be read.
+     *
+     * @see ReportParser#parse(File, ViolationListener)
+     */
+    public void parse(ViolationListener listener) throws IOException {
+        new ReportParser().parse(this.file, listener);
+    }
+
     public Executable toArgument(Executable executable) {
         this.validate();
         
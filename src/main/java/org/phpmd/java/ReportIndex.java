@@ -0,0 +1,322 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Secondary indexes over the rule violations of a report. Each index is
+ * built on its first use, so that a caller only pays for those dimensions
+ * that it actually queries.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class ReportIndex {
+
+    /**
+     * Separator between class and method name in the method index.
+     */
+    private static final String METHOD_SEPARATOR = "::";
+
+    /**
+     * Orders violations by their begin line.
+     */
+    private static final Comparator<RuleViolation> BEGIN_LINE_ORDER = new Comparator<RuleViolation>() {
+        public int compare(RuleViolation a, RuleViolation b) {
+            return (a.getBeginLine() < b.getBeginLine() ? -1 : (a.getBeginLine() > b.getBeginLine() ? 1 : 0));
+        }
+    };
+
+    /**
+     * The indexed violations.
+     */
+    private List<RuleViolation> violations = null;
+
+    /**
+     * The lazily built indexes.
+     */
+    private Map<String, List<RuleViolation>> files = null,
+                                             rules = null,
+                                             packages = null,
+                                             classes = null,
+                                             methods = null;
+
+    /**
+     * Longest line range of a single violation per file, used to limit the
+     * scanned part of a file in line range queries.
+     */
+    private Map<String, Integer> spans = null;
+
+    /**
+     * Constructs a new index for the given violations.
+     *
+     * @param violations The indexed violations.
+     */
+    public ReportIndex(List<RuleViolation> violations) {
+        this.violations = violations;
+    }
+
+    /**
+     * Returns all violations of the given file.
+     *
+     * @param fileName The name of the source file.
+     *
+     * @return The matching violations.
+     */
+    public synchronized List<RuleViolation> getByFile(String fileName) {
+        return this.get(this.getFiles(), fileName);
+    }
+
+    /**
+     * Returns all violations of the given rule.
+     *
+     * @param rule The name of the rule.
+     *
+     * @return The matching violations.
+     */
+    public synchronized List<RuleViolation> getByRule(String rule) {
+        if (this.rules == null) {
+            this.rules = new HashMap<String, List<RuleViolation>>();
+            for (RuleViolation violation : this.violations) {
+                this.add(this.rules, violation.getRule(), violation);
+            }
+        }
+        return this.get(this.rules, rule);
+    }
+
+    /**
+     * Returns all violations within the given package.
+     *
+     * @param packageName The name of the package.
+     *
+     * @return The matching violations.
+     */
+    public synchronized List<RuleViolation> getByPackage(String packageName) {
+        if (this.packages == null) {
+            this.packages = new HashMap<String, List<RuleViolation>>();
+            for (RuleViolation violation : this.violations) {
+                this.add(this.packages, violation.getPackageName(), violation);
+            }
+        }
+        return this.get(this.packages, packageName);
+    }
+
+    /**
+     * Returns all violations within the given class.
+     *
+     * @param className The name of the class.
+     *
+     * @return The matching violations.
+     */
+    public synchronized List<RuleViolation> getByClass(String className) {
+        if (this.classes == null) {
+            this.classes = new HashMap<String, List<RuleViolation>>();
+            for (RuleViolation violation : this.violations) {
+                this.add(this.classes, violation.getClassName(), violation);
+            }
+        }
+        return this.get(this.classes, className);
+    }
+
+    /**
+     * Returns all violations within the given method of the given class.
+     *
+     * @param className  The name of the class.
+     * @param methodName The name of the method.
+     *
+     * @return The matching violations.
+     */
+    public synchronized List<RuleViolation> getByMethod(String className, String methodName) {
+        if (this.methods == null) {
+            this.methods = new HashMap<String, List<RuleViolation>>();
+            for (RuleViolation violation : this.violations) {
+                String key = violation.getClassName() + METHOD_SEPARATOR + violation.getMethodName();
+                this.add(this.methods, key, violation);
+            }
+        }
+        return this.get(this.methods, className + METHOD_SEPARATOR + methodName);
+    }
+
+    /**
+     * Returns all violations of the given file whose line range overlaps with
+     * the given line range. The result is ordered by begin line.
+     *
+     * @param fileName  The name of the source file.
+     * @param beginLine First line of the queried range.
+     * @param endLine   Last line of the queried range.
+     *
+     * @return The matching violations.
+     */
+    public synchronized List<RuleViolation> getByLines(String fileName, int beginLine, int endLine) {
+        List<RuleViolation> candidates = this.getFiles().get(fileName);
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+
+        int from = this.lowerBound(candidates, beginLine - this.spans.get(fileName));
+        int to = this.lowerBound(candidates, endLine + 1);
+
+        List<RuleViolation> result = new ArrayList<RuleViolation>();
+        for (int i = from; i < to; ++i) {
+            if (candidates.get(i).getEndLine() >= beginLine) {
+                result.add(candidates.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of violations per file.
+     *
+     * @return Map with file names and their number of violations.
+     */
+    public synchronized Map<String, Integer> countByFile() {
+        return this.count(this.getFiles());
+    }
+
+    /**
+     * Returns the number of violations per rule.
+     *
+     * @return Map with rule names and their number of violations.
+     */
+    public synchronized Map<String, Integer> countByRule() {
+        this.getByRule(null);
+        return this.count(this.rules);
+    }
+
+    /**
+     * Returns the number of violations per package.
+     *
+     * @return Map with package names and their number of violations.
+     */
+    public synchronized Map<String, Integer> countByPackage() {
+        this.getByPackage(null);
+        return this.count(this.packages);
+    }
+
+    /**
+     * Returns the number of violations per class.
+     *
+     * @return Map with class names and their number of violations.
+     */
+    public synchronized Map<String, Integer> countByClass() {
+        this.getByClass(null);
+        return this.count(this.classes);
+    }
+
+    /**
+     * Returns the file index, where the violations of each file are ordered by
+     * their begin line.
+     */
+    private Map<String, List<RuleViolation>> getFiles() {
+        if (this.files == null) {
+            this.files = new HashMap<String, List<RuleViolation>>();
+            this.spans = new HashMap<String, Integer>();
+            for (RuleViolation violation : this.violations) {
+                this.add(this.files, violation.getFileName(), violation);
+
+                Integer span = this.spans.get(violation.getFileName());
+                int length = Math.max(0, violation.getEndLine() - violation.getBeginLine());
+                if (span == null || span < length) {
+                    this.spans.put(violation.getFileName(), length);
+                }
+            }
+            for (List<RuleViolation> list : this.files.values()) {
+                Collections.sort(list, BEGIN_LINE_ORDER);
+            }
+        }
+        return this.files;
+    }
+
+    /**
+     * Returns the index of the first violation that begins at or after the
+     * given line.
+     */
+    private int lowerBound(List<RuleViolation> list, int line) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).getBeginLine() < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void add(Map<String, List<RuleViolation>> index, String key, RuleViolation violation) {
+        List<RuleViolation> list = index.get(key);
+        if (list == null) {
+            list = new ArrayList<RuleViolation>();
+            index.put(key, list);
+        }
+        list.add(violation);
+    }
+
+    private List<RuleViolation> get(Map<String, List<RuleViolation>> index, String key) {
+        List<RuleViolation> list = index.get(key);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private Map<String, Integer> count(Map<String, List<RuleViolation>> index) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Map.Entry<String, List<RuleViolation>> entry : index.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        return counts;
+    }
+}
@@ -42,17 +42,19 @@
 
 package org.phpmd.java;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXParseException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
- *
+ * Streaming parser for the xml reports generated by phpmd. This parser never
+ * builds a complete document tree, instead it emits every rule violation in
+ * the moment when its closing tag was read, so that the memory consumption
+ * does not depend on the size of the parsed report.
  *
  * @author    Manuel Pichler <mapi@phpmd.org>
  * @copyright 2010 Manuel Pichler. All rights reserved.
@@ -62,64 +64,247 @@ import org.xml.sax.SAXParseException;
  */
 public class ReportParser {
 
-    private Report report = new Report();
+    /**
+     * Names of the xml elements that are of interest for this parser.
+     */
+    private static final String ELEMENT_FILE = "file",
+                                ELEMENT_VIOLATION = "violation";
+
+    /**
+     * Factory used to create the underlying stream readers.
+     */
+    private XMLInputFactory factory = null;
 
+    /**
+     * Parses the given report stream and returns a report instance that
+     * contains all rule violations found in the stream.
+     *
+     * @param stream The raw phpmd xml report.
+     *
+     * @return The parsed report.
+     */
     public Report parse(InputStream stream) {
-        Document doc = this.createDocument(stream);
-        if (doc == null) {
-            return new Report();
+        Report report = new Report();
+        this.parse(stream, report);
+        return report;
+    }
+
+    /**
+     * Parses the given report file and returns a report instance that
+     * contains all rule violations found in the file.
+     *
+     * @param file An xml report file written by phpmd.
+     *
+     * @return The parsed report.
+     *
+     * @throws IOException When the file cannot be read.
+     */
+    public Report parse(File file) throws IOException {
+        Report report = new Report();
+        this.parse(file, report);
+        return report;
+    }
+
+    /**
+     * Parses the given report file and passes each rule violation to the given
+     * listener. The file is read through memory mapped windows of its file
+     * channel, so that even very large reports are not copied into heap
+     * buffers before they get parsed.
+     *
+     * @param file     An xml report file written by phpmd.
+     * @param listener Listener that receives the parsed rule violations.
+     *
+     * @return <b>true</b> when the whole report was read, <b>false</b> when
+     *         parsing stopped at a malformed or truncated part of it.
+     *
+     * @throws IOException When the file cannot be read.
+     */
+    public boolean parse(File file, ViolationListener listener) throws IOException {
+        InputStream stream = new MappedFileInputStream(file);
+        try {
+            return this.parse(stream, listener);
+        } finally {
+            stream.close();
         }
-        return this.parse(doc);
     }
 
-    private Document createDocument(InputStream stream) {
+    /**
+     * Parses the given report stream and passes each rule violation to the
+     * given listener, as soon as it was read from the stream. Parsing stops
+     * silently at the first malformed part of the report, so that the listener
+     * will only receive those violations read until this point.
+     *
+     * @param stream   The raw phpmd xml report.
+     * @param listener Listener that receives the parsed rule violations.
+     *
+     * @return <b>true</b> when the whole report was read, <b>false</b> when
+     *         parsing stopped at a malformed or truncated part of it.
+     */
+    public boolean parse(InputStream stream, ViolationListener listener) {
+        XMLStreamReader reader = this.createReader(stream);
+        if (reader == null) {
+            return false;
+        }
+
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            db.setErrorHandler(new ErrorHandler() {
-                public void warning(SAXParseException exception) {
+            String fileName = "";
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_DOCUMENT) {
+                    return true;
                 }
-                public void error(SAXParseException exception) {
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
                 }
-                public void fatalError(SAXParseException exception) {
+                if (ELEMENT_FILE.equals(reader.getLocalName())) {
+                    fileName = this.getAttribute(reader, "name");
+                } else if (ELEMENT_VIOLATION.equals(reader.getLocalName())) {
+                    listener.ruleViolation(this.parse(reader, fileName));
                 }
-            });
+            }
+        } catch (XMLStreamException ex) {
+        } finally {
+            this.close(reader);
+        }
+        return false;
+    }
 
-            return db.parse(stream);
-        } catch (Exception ex) {
+    /**
+     * Parses the given report file and counts its rule violations in the
+     * given summary.
+     *
+     * @param file    An xml report file written by phpmd.
+     * @param summary The summary that counts the violations.
+     *
+     * @return <b>true</b> when the whole report was read.
+     *
+     * @throws IOException When the file cannot be read.
+     *
+     * @see #summarize(InputStream, ReportSummary)
+     */
+    public boolean summarize(File file, ReportSummary summary) throws IOException {
+        InputStream stream = new MappedFileInputStream(file);
+        try {
+            return this.summarize(stream, summary);
+        } finally {
+            stream.close();
         }
-        return null;
     }
 
-    private Report parse(Document doc) {
-        this.report = new Report();
+    /**
+     * Parses the given report stream and counts its rule violations in the
+     * given summary. Only the attributes needed for the counters are read,
+     * no rule violation objects are created and the violation descriptions
+     * are skipped. Like {@link #parse(InputStream, ViolationListener)},
+     * summarizing stops silently at the first malformed part of the report.
+     *
+     * @param stream  The raw phpmd xml report.
+     * @param summary The summary that counts the violations.
+     *
+     * @return <b>true</b> when the whole report was read, <b>false</b> when
+     *         summarizing stopped at a malformed or truncated part of it.
+     */
+    public boolean summarize(InputStream stream, ReportSummary summary) {
+        XMLStreamReader reader = this.createReader(stream);
+        if (reader == null) {
+            return false;
+        }
+
+        try {
+            String fileName = "";
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_DOCUMENT) {
+                    return true;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (ELEMENT_FILE.equals(reader.getLocalName())) {
+                    fileName = this.getAttribute(reader, "name");
+                } else if (ELEMENT_VIOLATION.equals(reader.getLocalName())) {
+                    summary.add(
+                            fileName,
+                            this.getAttribute(reader, "rule"),
+                            this.getAttribute(reader, "package"),
+                            this.getPriority(reader)
+                    );
+                }
+            }
+        } catch (XMLStreamException ex) {
+        } finally {
+            this.close(reader);
+        }
+        return false;
+    }
 
-        NodeList nodes = doc.getElementsByTagName("file");
-        for (int i = 0; i < nodes.getLength(); i++) {
-            this.parse((Element) nodes.item(i));
+    private XMLStreamReader createReader(InputStream stream) {
+        try {
+            return this.getFactory().createXMLStreamReader(stream);
+        } catch (XMLStreamException ex) {
         }
-        return this.report;
+        return null;
     }
 
-    private void parse(Element file) {
-        NodeList nodes = file.getElementsByTagName("violation");
-        for (int i = 0; i < nodes.getLength(); i++) {
-            this.parse((Element) nodes.item(i), file.getAttribute("name"));
+    private XMLInputFactory getFactory() {
+        if (this.factory == null) {
+            this.factory = XMLInputFactory.newInstance();
+            this.factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            this.factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
         }
+        return this.factory;
     }
 
-    private void parse(Element element, String fileName) {
+    private RuleViolation parse(XMLStreamReader reader, String fileName)
+            throws XMLStreamException {
+
         RuleViolation rv = new RuleViolation();
         rv.setFileName(fileName);
-        rv.setClassName(element.getAttribute("class"));
-        rv.setFunctionName(element.getAttribute("function"));
-        rv.setMethodName(element.getAttribute("method"));
-        rv.setPackageName(element.getAttribute("package"));
-        rv.setBeginLine(Integer.parseInt(element.getAttribute("beginline")));
-        rv.setEndLine(Integer.parseInt(element.getAttribute("endline")));
-        rv.setRule(element.getAttribute("rule"));
-        rv.setDescription(element.getTextContent().trim());
-
-        this.report.addRuleViolation(rv);
+        rv.setClassName(this.getAttribute(reader, "class"));
+        rv.setFunctionName(this.getAttribute(reader, "function"));
+        rv.setMethodName(this.getAttribute(reader, "method"));
+        rv.setPackageName(this.getAttribute(reader, "package"));
+        rv.setBeginLine(Integer.parseInt(this.getAttribute(reader, "beginline")));
+        rv.setEndLine(Integer.parseInt(this.getAttribute(reader, "endline")));
+        rv.setRule(this.getAttribute(reader, "rule"));
+        rv.setRuleSet(this.getAttribute(reader, "ruleset"));
+        rv.setExternalInfoUrl(this.getAttribute(reader, "externalInfoUrl"));
+        rv.setPriority(this.getPriority(reader));
+        rv.setDescription(reader.getElementText().trim());
+
+        return rv;
+    }
+
+    /**
+     * Returns the value of the given attribute or an empty string when no such
+     * attribute exists on the current element.
+     */
+    private String getAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            return "";
+        }
+        return value;
+    }
+
+    /**
+     * Returns the priority of the current violation element or <b>0</b> when
+     * the element has no valid priority attribute.
+     */
+    private int getPriority(XMLStreamReader reader) {
+        try {
+            return Integer.parseInt(this.getAttribute(reader, "priority"));
+        } catch (NumberFormatException ex) {
+            // Older phpmd versions write no priority attribute
+            return 0;
+        }
+    }
+
+    private void close(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException ex) {
+        }
     }
 }
@@ -0,0 +1,277 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import de.xplib.execution.ValidationException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Aggregated counts of a phpmd report, for callers that do not need the
+ * single rule violations. A summary only keeps the names of rules, files and
+ * packages in dictionaries and one counter per name, so that its size does
+ * not depend on the number of violations.
+ *
+ * A summary can be filled by {@link ReportParser#summarize(java.io.InputStream, ReportSummary)},
+ * which never creates rule violation objects, or be used as listener for
+ * violations from any other source.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class ReportSummary implements ViolationListener {
+
+    private StringDictionary rules = new StringDictionary();
+
+    private StringDictionary files = new StringDictionary();
+
+    private StringDictionary packages = new StringDictionary();
+
+    /**
+     * Violation counts indexed by the dictionary ids.
+     */
+    private int[] ruleCounts = new int[16],
+                  fileCounts = new int[16],
+                  packageCounts = new int[16];
+
+    /**
+     * Violation counts indexed by priority, the index zero counts violations
+     * with an unknown priority.
+     */
+    private int[] priorityCounts = new int[Priority.LOWEST_PRIORITY + 1];
+
+    /**
+     * Total number of counted violations.
+     */
+    private int violations = 0;
+
+    /**
+     * Counts the given rule violation.
+     *
+     * @param violation The rule violation.
+     */
+    public void ruleViolation(RuleViolation violation) {
+        this.add(
+                violation.getFileName(),
+                violation.getRule(),
+                violation.getPackageName(),
+                violation.getPriority()
+        );
+    }
+
+    /**
+     * Counts a single violation.
+     *
+     * @param fileName    The file name of the violation.
+     * @param rule        The name of the violated rule.
+     * @param packageName The package name or an empty string.
+     * @param priority    The priority or <b>0</b> when it is unknown.
+     */
+    synchronized void add(String fileName, String rule, String packageName, int priority) {
+        this.ruleCounts = this.increment(this.ruleCounts, this.rules.add(rule));
+        this.fileCounts = this.increment(this.fileCounts, this.files.add(fileName));
+        if (packageName != null && packageName.length() > 0) {
+            this.packageCounts = this.increment(this.packageCounts, this.packages.add(packageName));
+        }
+
+        if (priority < 0 || priority > Priority.LOWEST_PRIORITY) {
+            priority = 0;
+        }
+        ++this.priorityCounts[priority];
+        ++this.violations;
+    }
+
+    /**
+     * Returns the total number of violations.
+     *
+     * @return The number of violations.
+     */
+    public synchronized int getViolations() {
+        return this.violations;
+    }
+
+    /**
+     * Counts the violations of each rule.
+     *
+     * @return The number of violations per rule name, in the order in which
+     *         the rules occurred first.
+     */
+    public synchronized Map<String, Integer> countByRule() {
+        return this.count(this.rules, this.ruleCounts);
+    }
+
+    /**
+     * Counts the violations of each file.
+     *
+     * @return The number of violations per file name, in the order in which
+     *         the files occurred first.
+     */
+    public synchronized Map<String, Integer> countByFile() {
+        return this.count(this.files, this.fileCounts);
+    }
+
+    /**
+     * Counts the violations of each package.
+     *
+     * @return The number of violations per package name, in the order in
+     *         which the packages occurred first.
+     */
+    public synchronized Map<String, Integer> countByPackage() {
+        return this.count(this.packages, this.packageCounts);
+    }
+
+    /**
+     * Counts the violations of each priority.
+     *
+     * @return An array indexed by priority value, the index zero counts the
+     *         violations with an unknown priority.
+     */
+    public synchronized int[] countByPriority() {
+        return this.priorityCounts.clone();
+    }
+
+    /**
+     * Returns the <b>count</b> rules with the most violations.
+     *
+     * @param count The maximum number of returned rules.
+     *
+     * @return The number of violations per rule name, ordered by descending
+     *         number of violations.
+     *
+     * @throws ValidationException When the count is not greater than zero.
+     */
+    public synchronized Map<String, Integer> getTopRules(int count) {
+        return this.top(this.rules, this.ruleCounts, count);
+    }
+
+    /**
+     * Returns the <b>count</b> files with the most violations.
+     *
+     * @param count The maximum number of returned files.
+     *
+     * @return The number of violations per file name, ordered by descending
+     *         number of violations.
+     *
+     * @throws ValidationException When the count is not greater than zero.
+     */
+    public synchronized Map<String, Integer> getTopFiles(int count) {
+        return this.top(this.files, this.fileCounts, count);
+    }
+
+    /**
+     * Returns the <b>count</b> packages with the most violations.
+     *
+     * @param count The maximum number of returned packages.
+     *
+     * @return The number of violations per package name, ordered by
+     *         descending number of violations.
+     *
+     * @throws ValidationException When the count is not greater than zero.
+     */
+    public synchronized Map<String, Integer> getTopPackages(int count) {
+        return this.top(this.packages, this.packageCounts, count);
+    }
+
+    private int[] increment(int[] counts, int id) {
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length + (counts.length >> 1)));
+        }
+        ++counts[id];
+        return counts;
+    }
+
+    private Map<String, Integer> count(StringDictionary dictionary, int[] counts) {
+        Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+        for (int id = 1; id < dictionary.size(); ++id) {
+            result.put(dictionary.get(id), counts[id]);
+        }
+        return result;
+    }
+
+    /**
+     * Selects the ids with the highest counts with a heap of at most
+     * <b>count</b> ids, where ids that occurred first win on equal counts.
+     */
+    private Map<String, Integer> top(StringDictionary dictionary, final int[] counts, int count) {
+        if (count <= 0) {
+            throw new ValidationException("The number of returned entries must be greater than zero.");
+        }
+
+        Comparator<Integer> order = new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                if (counts[a] != counts[b]) {
+                    return (counts[a] < counts[b] ? -1 : 1);
+                }
+                return b.compareTo(a);
+            }
+        };
+
+        // The capacity is bounded by the number of ids, so that a huge count
+        // like Integer.MAX_VALUE can be used to request all entries
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.max(1, Math.min(count, dictionary.size() - 1)), order);
+        for (int id = 1; id < dictionary.size(); ++id) {
+            if (heap.size() < count) {
+                heap.add(id);
+            } else if (order.compare(id, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(id);
+            }
+        }
+
+        Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+        int[] ids = new int[heap.size()];
+        for (int i = ids.length - 1; i >= 0; --i) {
+            ids[i] = heap.poll();
+        }
+        for (int id : ids) {
+            result.put(dictionary.get(id), counts[id]);
+        }
+        return result;
+    }
+}
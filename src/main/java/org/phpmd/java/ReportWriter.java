@@ -0,0 +1,230 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base class for listeners that write each received rule violation to an
+ * output stream, in a report format that phpmd itself does not support.
+ * Violations are written in the moment when they are received, so that a
+ * writer can be passed to {@link Phpmd#run(ViolationListener)} or to
+ * {@link ReportParser#parse(java.io.File, ViolationListener)} to convert
+ * reports of any size without keeping them in memory.
+ *
+ * The document is completed by {@link #close()}, which also closes the
+ * underlying stream.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public abstract class ReportWriter implements ViolationListener, Closeable {
+
+    /**
+     * The buffered output writer.
+     */
+    private Writer out = null;
+
+    /**
+     * Was the document header already written?
+     */
+    private boolean started = false;
+
+    /**
+     * Was this writer already closed?
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructs a new writer for the given stream, using UTF-8 encoding.
+     *
+     * @param stream The output stream.
+     */
+    protected ReportWriter(OutputStream stream) {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the given rule violation.
+     *
+     * @param violation The rule violation.
+     *
+     * @throws IllegalStateException When the output stream cannot be written.
+     */
+    public synchronized void ruleViolation(RuleViolation violation) {
+        try {
+            this.start();
+            this.writeViolation(this.out, violation);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot write report: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Writes all rule violations of the given report.
+     *
+     * @param report The report to write.
+     *
+     * @throws IOException When the output stream cannot be written.
+     */
+    public synchronized void write(Report report) throws IOException {
+        this.start();
+        for (RuleViolation violation : report.getRuleViolations()) {
+            this.writeViolation(this.out, violation);
+        }
+    }
+
+    /**
+     * Flushes all buffered output to the underlying stream.
+     *
+     * @throws IOException When the output stream cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        this.out.flush();
+    }
+
+    /**
+     * Completes the written document and closes the underlying stream.
+     *
+     * @throws IOException When the output stream cannot be written.
+     */
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        try {
+            this.start();
+            this.writeFooter(this.out);
+        } finally {
+            this.closed = true;
+            this.out.close();
+        }
+    }
+
+    private void start() throws IOException {
+        if (this.closed) {
+            throw new IOException("Writer already closed.");
+        }
+        if (!this.started) {
+            this.started = true;
+            this.writeHeader(this.out);
+        }
+    }
+
+    /**
+     * Writes everything that precedes the first rule violation.
+     *
+     * @param out The output writer.
+     *
+     * @throws IOException When the output cannot be written.
+     */
+    protected abstract void writeHeader(Writer out) throws IOException;
+
+    /**
+     * Writes a single rule violation.
+     *
+     * @param out       The output writer.
+     * @param violation The rule violation.
+     *
+     * @throws IOException When the output cannot be written.
+     */
+    protected abstract void writeViolation(Writer out, RuleViolation violation) throws IOException;
+
+    /**
+     * Writes everything that follows the last rule violation.
+     *
+     * @param out The output writer.
+     *
+     * @throws IOException When the output cannot be written.
+     */
+    protected abstract void writeFooter(Writer out) throws IOException;
+
+    /**
+     * Writes the given value as a quoted and escaped json string.
+     *
+     * @param out   The output writer.
+     * @param value The raw string value.
+     *
+     * @throws IOException When the output cannot be written.
+     */
+    protected static void writeJsonString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0, n = value.length(); i < n; ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
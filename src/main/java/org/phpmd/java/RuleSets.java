@@ -46,6 +46,7 @@ import de.xplib.execution.Argument;
 import de.xplib.execution.Executable;
 import de.xplib.execution.ValidationException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -65,17 +66,52 @@ public class RuleSets implements Argument {
         this.ruleSets.add(ruleSet);
     }
 
+    public List<RuleSet> getRuleSets() {
+        return Collections.unmodifiableList(this.ruleSets);
+    }
+
+    /**
+     * Splits the configured rule sets into at most <b>count</b> groups, so
+     * that each group can be analyzed by a separate phpmd process. Each group
+     * holds a contiguous range of the rule sets and the group sizes differ by
+     * at most one, so that the groups in their order contain the rule sets in
+     * the order they were added. A count below one is treated as one.
+     *
+     * @param count The maximum number of groups.
+     *
+     * @return The non empty rule set groups.
+     */
+    public List<RuleSets> split(int count) {
+        int groups = Math.max(1, Math.min(count, this.ruleSets.size()));
+
+        List<RuleSets> result = new ArrayList<RuleSets>(groups);
+        for (int i = 0, offset = 0; i < groups; ++i) {
+            int size = this.ruleSets.size() / groups + (i < this.ruleSets.size() % groups ? 1 : 0);
+
+            RuleSets group = new RuleSets();
+            for (RuleSet ruleSet : this.ruleSets.subList(offset, offset + size)) {
+                group.add(ruleSet);
+            }
+            result.add(group);
+            offset += size;
+        }
+        return result;
+    }
+
     public Executable toArgument(Executable executable) {
         this.validate();
         return executable.addArgument(this.ruleSetsToString());
     }
 
-    private String ruleSetsToString() {
-        String string = "";
+    protected String ruleSetsToString() {
+        StringBuilder string = new StringBuilder();
         for (RuleSet ruleSet : this.ruleSets) {
-            string += "," + ruleSet.getFileOrIdentifier();
+            if (string.length() > 0) {
+                string.append(',');
+            }
+            string.append(ruleSet.getFileOrIdentifier());
         }
-        return string.substring(1);
+        return string.toString();
     }
 
     protected void validate() {
@@ -63,8 +63,12 @@ public class RuleViolation {
     private int endLine;
 
     private String rule;
+    private String ruleSet;
+    private String externalInfoUrl;
     private String description;
 
+    private int priority;
+
     public String getFileName() {
         return this.fileName;
     }
@@ -136,4 +140,35 @@ public class RuleViolation {
     public void setRule(String rule) {
         this.rule = rule;
     }
+
+    public String getRuleSet() {
+        return this.ruleSet;
+    }
+
+    public void setRuleSet(String ruleSet) {
+        this.ruleSet = ruleSet;
+    }
+
+    public String getExternalInfoUrl() {
+        return this.externalInfoUrl;
+    }
+
+    public void setExternalInfoUrl(String externalInfoUrl) {
+        this.externalInfoUrl = externalInfoUrl;
+    }
+
+    /**
+     * Returns the priority of the violated rule, between
+     * {@link Priority#HIGHEST_PRIORITY} and {@link Priority#LOWEST_PRIORITY},
+     * or <b>0</b> when the priority is unknown.
+     *
+     * @return The rule priority.
+     */
+    public int getPriority() {
+        return this.priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
 }
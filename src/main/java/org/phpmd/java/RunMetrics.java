@@ -0,0 +1,172 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings and throughput numbers of a single phpmd process run. Execution and
+ * parse time overlap, because the report is parsed while phpmd is running.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class RunMetrics {
+
+    /**
+     * The measured phases of a run.
+     */
+    public enum Phase {
+
+        /**
+         * Validation of the configured arguments.
+         */
+        VALIDATE,
+
+        /**
+         * Start of the phpmd process.
+         */
+        SPAWN,
+
+        /**
+         * Lifetime of the phpmd process.
+         */
+        EXECUTION,
+
+        /**
+         * Parsing of the phpmd report.
+         */
+        PARSE
+    }
+
+    /**
+     * Duration of each phase in nanoseconds.
+     */
+    private long[] durations = new long[Phase.values().length];
+
+    /**
+     * Number of report bytes read from phpmd.
+     */
+    private long bytesRead = 0;
+
+    /**
+     * Number of parsed rule violations.
+     */
+    private int violations = 0;
+
+    /**
+     * Exit code of the phpmd process.
+     */
+    private int exitCode = 0;
+
+    /**
+     * Returns the duration of the given phase.
+     *
+     * @param phase The measured phase.
+     * @param unit  The time unit of the returned value.
+     *
+     * @return The duration of the phase.
+     */
+    public long getDuration(Phase phase, TimeUnit unit) {
+        return unit.convert(this.durations[phase.ordinal()], TimeUnit.NANOSECONDS);
+    }
+
+    void setDuration(Phase phase, long nanos) {
+        this.durations[phase.ordinal()] = nanos;
+    }
+
+    /**
+     * Returns the number of report bytes read from phpmd.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * Returns the number of parsed rule violations.
+     *
+     * @return The number of violations.
+     */
+    public int getViolations() {
+        return this.violations;
+    }
+
+    void setViolations(int violations) {
+        this.violations = violations;
+    }
+
+    /**
+     * Returns the number of parsed violations per second of parse time.
+     *
+     * @return The parse throughput.
+     */
+    public double getViolationsPerSecond() {
+        long nanos = this.durations[Phase.PARSE.ordinal()];
+        if (nanos == 0) {
+            return 0;
+        }
+        return this.violations * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Returns the exit code of the phpmd process.
+     *
+     * @return The exit code.
+     */
+    public int getExitCode() {
+        return this.exitCode;
+    }
+
+    void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rule violations as a SARIF 2.1.0 log, as it is consumed by code
+ * scanning services.
+ *
+ * The results are written in the moment when they are received, while the
+ * rule descriptors, which are few, are collected and written after the last
+ * result. A writer that was created with a base directory writes file
+ * locations relative to this directory, using the uri base id
+ * <b>SRCROOT</b>.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class SarifReportWriter extends ReportWriter {
+
+    private static final String URI_BASE_ID = "SRCROOT";
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Normalized path of the base directory, ending with a slash, or
+     * <b>null</b>.
+     */
+    private String basePath = null;
+
+    /**
+     * Index of each rule in the rule descriptors of the log.
+     */
+    private Map<String, Integer> ruleIndexes = new HashMap<String, Integer>();
+
+    /**
+     * One violation of each rule, in the order of the rule indexes, used to
+     * write the rule descriptors.
+     */
+    private List<RuleViolation> rules = new ArrayList<RuleViolation>();
+
+    /**
+     * Was a result already written?
+     */
+    private boolean hasResults = false;
+
+    /**
+     * Constructs a new SARIF writer that writes absolute file locations.
+     *
+     * @param stream The output stream.
+     */
+    public SarifReportWriter(OutputStream stream) {
+        super(stream);
+    }
+
+    /**
+     * Constructs a new SARIF writer that writes file locations relative to
+     * the given directory, when a file is located below this directory.
+     *
+     * @param stream        The output stream.
+     * @param baseDirectory The root directory of the analyzed project.
+     */
+    public SarifReportWriter(OutputStream stream, File baseDirectory) {
+        super(stream);
+
+        String path = baseDirectory.getAbsolutePath().replace('\\', '/');
+        if (!path.endsWith("/")) {
+            path += "/";
+        }
+        this.basePath = path;
+    }
+
+    @Override
+    protected void writeHeader(Writer out) throws IOException {
+        out.write("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",");
+        out.write("\"version\":\"2.1.0\",\"runs\":[{\"results\":[");
+    }
+
+    @Override
+    protected void writeViolation(Writer out, RuleViolation violation) throws IOException {
+        Integer ruleIndex = this.ruleIndexes.get(violation.getRule());
+        if (ruleIndex == null) {
+            ruleIndex = this.rules.size();
+            this.ruleIndexes.put(violation.getRule(), ruleIndex);
+            this.rules.add(violation);
+        }
+
+        out.write(this.hasResults ? ",\n" : "\n");
+        this.hasResults = true;
+
+        out.write("{\"ruleId\":");
+        writeJsonString(out, violation.getRule());
+        out.write(",\"ruleIndex\":");
+        out.write(ruleIndex.toString());
+        out.write(",\"level\":\"");
+        out.write(this.getLevel(violation.getPriority()));
+        out.write("\",\"message\":{\"text\":");
+        writeJsonString(out, violation.getDescription());
+        out.write("},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":");
+        this.writeArtifactLocation(out, violation.getFileName());
+        if (violation.getBeginLine() > 0) {
+            out.write(",\"region\":{\"startLine\":");
+            out.write(Integer.toString(violation.getBeginLine()));
+            if (violation.getEndLine() >= violation.getBeginLine()) {
+                out.write(",\"endLine\":");
+                out.write(Integer.toString(violation.getEndLine()));
+            }
+            out.write('}');
+        }
+        out.write('}');
+        this.writeLogicalLocation(out, violation);
+        out.write("}]}");
+    }
+
+    @Override
+    protected void writeFooter(Writer out) throws IOException {
+        out.write("\n],\"tool\":{\"driver\":{\"name\":\"PHPMD\",");
+        out.write("\"informationUri\":\"http://phpmd.org\",\"rules\":[");
+        for (int i = 0; i < this.rules.size(); ++i) {
+            RuleViolation rule = this.rules.get(i);
+
+            out.write(i == 0 ? "\n" : ",\n");
+            out.write("{\"id\":");
+            writeJsonString(out, rule.getRule());
+            if (!this.isEmpty(rule.getExternalInfoUrl())) {
+                out.write(",\"helpUri\":");
+                writeJsonString(out, rule.getExternalInfoUrl());
+            }
+            if (!this.isEmpty(rule.getRuleSet())) {
+                out.write(",\"properties\":{\"ruleSet\":");
+                writeJsonString(out, rule.getRuleSet());
+                out.write('}');
+            }
+            out.write('}');
+        }
+        out.write("\n]}}");
+        if (this.basePath != null) {
+            out.write(",\"originalUriBaseIds\":{\"" + URI_BASE_ID + "\":{\"uri\":");
+            writeJsonString(out, this.toUri("file://" + (this.basePath.startsWith("/") ? "" : "/"), this.basePath));
+            out.write("}}");
+        }
+        out.write("}]}\n");
+    }
+
+    private void writeArtifactLocation(Writer out, String fileName) throws IOException {
+        String path = fileName.replace('\\', '/');
+        if (this.basePath != null && path.startsWith(this.basePath)) {
+            out.write("{\"uri\":");
+            writeJsonString(out, this.toUri("", path.substring(this.basePath.length())));
+            out.write(",\"uriBaseId\":\"" + URI_BASE_ID + "\"}");
+        } else {
+            out.write("{\"uri\":");
+            writeJsonString(out, this.toUri("file://" + (path.startsWith("/") ? "" : "/"), path));
+            out.write('}');
+        }
+    }
+
+    /**
+     * Writes the class, method or function of a violation as logical
+     * location, when the violation has one.
+     */
+    private void writeLogicalLocation(Writer out, RuleViolation violation) throws IOException {
+        String name;
+        String kind;
+        if (!this.isEmpty(violation.getMethodName())) {
+            name = violation.getClassName() + "::" + violation.getMethodName();
+            kind = "function";
+        } else if (!this.isEmpty(violation.getFunctionName())) {
+            name = violation.getFunctionName();
+            kind = "function";
+        } else if (!this.isEmpty(violation.getClassName())) {
+            name = violation.getClassName();
+            kind = "type";
+        } else {
+            return;
+        }
+
+        out.write(",\"logicalLocations\":[{\"fullyQualifiedName\":");
+        writeJsonString(out, name);
+        out.write(",\"kind\":\"" + kind + "\"}]");
+    }
+
+    /**
+     * Maps a phpmd priority to a SARIF level, where unknown priorities are
+     * reported as warnings.
+     */
+    private String getLevel(int priority) {
+        if (priority == 1 || priority == 2) {
+            return "error";
+        } else if (priority == 3 || priority == 0) {
+            return "warning";
+        }
+        return "note";
+    }
+
+    /**
+     * Percent encodes all characters of the given path that are not allowed
+     * in the path of an uri and prepends the given prefix.
+     */
+    private String toUri(String prefix, String path) {
+        StringBuilder uri = new StringBuilder(prefix.length() + path.length());
+        uri.append(prefix);
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '/' || c == '-' || c == '.' || c == '_' || c == '~' || c == ':') {
+                uri.append(c);
+            } else {
+                uri.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        return uri.toString();
+    }
+
+    private boolean isEmpty(String value) {
+        return (value == null || value.length() == 0);
+    }
+}
@@ -44,6 +44,8 @@ package org.phpmd.java;
 
 import de.xplib.execution.ValidationException;
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Represents a source file or directory that should be processed by phpmd.
@@ -74,6 +76,17 @@ public class Source {
         return this.fileOrDirectory.getAbsolutePath();
     }
 
+    /**
+     * Returns all source files that phpmd would analyze for this input. For a
+     * single file this is the file itself, for a directory all files with one
+     * of phpmd's default file extensions found in the directory tree.
+     *
+     * @return The source files behind this input.
+     */
+    public List<File> getFiles() {
+        return new SourceDiscovery().discover(Collections.singleton(this)).getFiles();
+    }
+
     protected void validate() {
         if (!this.fileOrDirectory.exists()) {
             throw new ValidationException("The input " + this.fileOrDirectory.getAbsolutePath() + " does not exist.");
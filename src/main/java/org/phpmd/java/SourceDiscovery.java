@@ -0,0 +1,364 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Discovers the source files behind a set of input sources. Directories are
+ * walked in parallel, where each top level subdirectory of a source root is
+ * walked by its own task. Files are filtered by their extension and by a set
+ * of exclude glob patterns, where an excluded directory is never entered.
+ *
+ * Exclude patterns use the syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}
+ * and are matched against the path relative to the source root as well as
+ * against the absolute path, so that both <b>vendor</b> and
+ * <b>&#42;&#42;/generated</b> work as expected.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class SourceDiscovery {
+
+    /**
+     * File extensions that phpmd analyzes by default.
+     */
+    public static final String[] DEFAULT_SUFFIXES = {"php", "php3", "php4", "php5", "inc"};
+
+    /**
+     * Version control directories that phpmd ignores by default.
+     */
+    private static final Set<String> IGNORED_DIRECTORIES = new HashSet<String>(
+        Arrays.asList(
+            new String[] {
+                ".bzr",
+                ".git",
+                ".hg",
+                ".svn",
+                "CVS",
+                "SCCS"
+            }
+        )
+    );
+
+    /**
+     * The accepted file extensions, in lower case.
+     */
+    private Set<String> suffixes = new HashSet<String>(Arrays.asList(DEFAULT_SUFFIXES));
+
+    /**
+     * The precompiled exclude patterns.
+     */
+    private List<PathMatcher> excludes = new ArrayList<PathMatcher>();
+
+    /**
+     * Maximum number of concurrent directory walks.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Sets the accepted file extensions, without a leading dot.
+     *
+     * @param suffixes The accepted file extensions.
+     */
+    public void setSuffixes(String... suffixes) {
+        this.suffixes = new HashSet<String>();
+        for (String suffix : suffixes) {
+            this.suffixes.add(suffix.toLowerCase());
+        }
+    }
+
+    /**
+     * Adds a glob pattern for files and directories that should be excluded.
+     *
+     * @param glob The exclude pattern.
+     */
+    public void addExclude(String glob) {
+        this.excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+    }
+
+    /**
+     * Tests if this discovery filters sources in a way that differs from
+     * phpmd's own default behavior.
+     *
+     * @return <b>true</b> when exclude patterns or non default suffixes are
+     *         configured.
+     */
+    public boolean isFiltering() {
+        return !this.excludes.isEmpty()
+                || !this.suffixes.equals(new HashSet<String>(Arrays.asList(DEFAULT_SUFFIXES)));
+    }
+
+    /**
+     * Sets the maximum number of concurrent directory walks.
+     *
+     * @param threads The number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Discovers all source files behind the given source list.
+     *
+     * @param sources The source list.
+     *
+     * @return The discovered source files.
+     *
+     * @throws IllegalStateException When a source directory cannot be read.
+     */
+    public SourceManifest discover(SourceList sources) {
+        return this.discover(sources.getSources());
+    }
+
+    /**
+     * Discovers all source files behind the given sources. A file that is
+     * covered by more than one source is only listed once.
+     *
+     * @param sources The input sources.
+     *
+     * @return The discovered source files.
+     *
+     * @throws IllegalStateException When a source directory cannot be read or
+     *         the calling thread is interrupted, so that an incomplete
+     *         manifest never looks like a clean one.
+     */
+    public SourceManifest discover(Collection<Source> sources) {
+        List<Callable<List<SourceManifest.Entry>>> tasks = new ArrayList<Callable<List<SourceManifest.Entry>>>();
+        List<SourceManifest.Entry> entries = new ArrayList<SourceManifest.Entry>();
+
+        for (Source source : sources) {
+            Path root = new File(source.getFileOrDirectory()).toPath();
+            if (Files.isDirectory(root)) {
+                this.split(root, tasks, entries);
+            } else if (Files.isRegularFile(root)) {
+                entries.add(new SourceManifest.Entry(root.toFile(), root.toFile().length()));
+            }
+        }
+
+        for (List<SourceManifest.Entry> result : this.runAll(tasks)) {
+            entries.addAll(result);
+        }
+        return new SourceManifest(this.unique(entries));
+    }
+
+    /**
+     * Creates one walk task per subdirectory of the given root and adds the
+     * files directly within the root to the given entries.
+     */
+    private void split(
+            final Path root,
+            List<Callable<List<SourceManifest.Entry>>> tasks,
+            List<SourceManifest.Entry> entries) {
+
+        DirectoryStream<Path> children = null;
+        try {
+            children = Files.newDirectoryStream(root);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot discover source files: " + ex.getMessage(), ex);
+        }
+        try {
+            for (final Path child : children) {
+                // A child that vanished or cannot be read is skipped, like in
+                // the directory walks
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                } catch (IOException ex) {
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    if (!this.isExcludedDirectory(root, child)) {
+                        tasks.add(new Callable<List<SourceManifest.Entry>>() {
+                            public List<SourceManifest.Entry> call() throws IOException {
+                                return walk(root, child);
+                            }
+                        });
+                    }
+                } else if (this.isSourceFile(root, child, attributes)) {
+                    entries.add(new SourceManifest.Entry(child.toFile(), attributes.size()));
+                }
+            }
+        } catch (DirectoryIteratorException ex) {
+            throw new IllegalStateException("Cannot discover source files: " + ex.getCause().getMessage(), ex.getCause());
+        } finally {
+            try {
+                children.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+
+    /**
+     * Walks the given directory tree below the given source root.
+     */
+    private List<SourceManifest.Entry> walk(final Path root, Path directory) throws IOException {
+        final List<SourceManifest.Entry> entries = new ArrayList<SourceManifest.Entry>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                if (isExcludedDirectory(root, dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && isSourceFile(root, file, attributes)) {
+                    entries.add(new SourceManifest.Entry(file.toFile(), attributes.size()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return entries;
+    }
+
+    boolean isExcludedDirectory(Path root, Path directory) {
+        if (IGNORED_DIRECTORIES.contains(directory.getFileName().toString())) {
+            return true;
+        }
+        return this.isExcluded(root, directory);
+    }
+
+    private boolean isSourceFile(Path root, Path file, BasicFileAttributes attributes) {
+        if (!attributes.isRegularFile()) {
+            return false;
+        }
+        return this.isSourcePath(root, file);
+    }
+
+    /**
+     * Tests if the given path below the given source root has an accepted
+     * suffix and is not excluded. The path itself is not accessed, so that
+     * this also works for deleted files.
+     */
+    boolean isSourcePath(Path root, Path file) {
+        String name = file.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        if (index == -1 || !this.suffixes.contains(name.substring(index + 1).toLowerCase())) {
+            return false;
+        }
+        return !this.isExcluded(root, file);
+    }
+
+    private boolean isExcluded(Path root, Path path) {
+        if (this.excludes.isEmpty()) {
+            return false;
+        }
+
+        Path relative = root.relativize(path);
+        Path absolute = path.toAbsolutePath();
+        for (PathMatcher exclude : this.excludes) {
+            if (exclude.matches(relative) || exclude.matches(absolute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<List<SourceManifest.Entry>> runAll(List<Callable<List<SourceManifest.Entry>>> tasks) {
+        if (tasks.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(this.threads, tasks.size()));
+        try {
+            List<List<SourceManifest.Entry>> results = new ArrayList<List<SourceManifest.Entry>>();
+            for (Future<List<SourceManifest.Entry>> future : pool.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException("Cannot discover source files: " + ex.getCause().getMessage(), ex.getCause());
+                }
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while discovering source files.", ex);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<SourceManifest.Entry> unique(List<SourceManifest.Entry> entries) {
+        Set<File> files = new HashSet<File>();
+        List<SourceManifest.Entry> result = new ArrayList<SourceManifest.Entry>(entries.size());
+        for (SourceManifest.Entry entry : entries) {
+            if (files.add(entry.getFile().getAbsoluteFile())) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+}
@@ -45,7 +45,12 @@ package org.phpmd.java;
 import de.xplib.execution.Argument;
 import de.xplib.execution.Executable;
 import de.xplib.execution.ValidationException;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -59,6 +64,22 @@ import java.util.Set;
  */
 public class SourceList implements Argument {
 
+    /**
+     * Strategies that can be used to partition a source list.
+     */
+    public enum Partitioning {
+
+        /**
+         * Each partition gets roughly the same number of files.
+         */
+        FILE_COUNT,
+
+        /**
+         * Each partition gets roughly the same number of bytes.
+         */
+        BYTE_SIZE
+    }
+
     /**
      * All input sources.
      */
@@ -73,6 +94,82 @@ public class SourceList implements Argument {
         this.inputs.add(source);
     }
 
+    /**
+     * Returns the configured input sources.
+     *
+     * @return All input sources.
+     */
+    public Set<Source> getSources() {
+        return Collections.unmodifiableSet(this.inputs);
+    }
+
+    /**
+     * Returns all source files behind the configured inputs, each file only
+     * once, even when it is covered by more than one input.
+     *
+     * @return The source files behind all inputs.
+     */
+    public List<File> getFiles() {
+        return new SourceDiscovery().discover(this).getFiles();
+    }
+
+    /**
+     * Splits the files behind this source list into at most <b>count</b>
+     * balanced partitions.
+     *
+     * @param count        The maximum number of partitions.
+     * @param partitioning The used partitioning strategy.
+     *
+     * @return The non empty partitions.
+     *
+     * @see SourceManifest#partition(int, Partitioning)
+     */
+    public List<SourceList> partition(int count, Partitioning partitioning) {
+        this.validate();
+        return new SourceDiscovery().discover(this).partition(count, partitioning);
+    }
+
+    /**
+     * Splits this source list into batches whose comma separated argument is
+     * at most <b>maxLength</b> bytes long, so that each batch can be passed
+     * to a separate phpmd process without exceeding the operating system's
+     * command line limit. A single source that is longer than the limit
+     * gets a batch of its own.
+     *
+     * @param maxLength The maximum argument length in bytes, or <b>0</b> for
+     *        no limit.
+     *
+     * @return This source list when it fits into the limit, otherwise the
+     *         non empty batches.
+     */
+    public List<SourceList> batch(int maxLength) {
+        if (maxLength <= 0) {
+            return Collections.singletonList(this);
+        }
+
+        List<SourceList> batches = new ArrayList<SourceList>();
+        SourceList batch = new SourceList();
+        int length = 0;
+        for (Source input : this.inputs) {
+            int size = input.getFileOrDirectory().getBytes(StandardCharsets.UTF_8).length;
+            if (!batch.inputs.isEmpty() && length + 1 + size > maxLength) {
+                batches.add(batch);
+                batch = new SourceList();
+                length = 0;
+            }
+            length += (batch.inputs.isEmpty() ? size : size + 1);
+            batch.add(input);
+        }
+        if (!batch.inputs.isEmpty()) {
+            batches.add(batch);
+        }
+
+        if (batches.size() <= 1) {
+            return Collections.singletonList(this);
+        }
+        return batches;
+    }
+
     /**
      * Appends all source files to the given executable.
      *
@@ -83,11 +180,24 @@ public class SourceList implements Argument {
     public Executable toArgument(Executable executable) {
         this.validate();
         
-        String list = "";
+        return executable.addArgument(this.sourcesToString());
+    }
+
+    /**
+     * Returns the comma separated list of all sources, as expected by the
+     * phpmd command line interface.
+     *
+     * @return The joined sources.
+     */
+    protected String sourcesToString() {
+        StringBuilder list = new StringBuilder();
         for (Source input : this.inputs) {
-            list += "," + input.getFileOrDirectory();
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(input.getFileOrDirectory());
         }
-        return executable.addArgument(list.substring(1));
+        return list.toString();
     }
 
     /**
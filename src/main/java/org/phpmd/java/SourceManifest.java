@@ -0,0 +1,226 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Result of a source discovery, the list of all source files that will be
+ * analyzed together with their sizes.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class SourceManifest {
+
+    /**
+     * A single discovered source file.
+     */
+    public static class Entry implements Comparable<Entry> {
+
+        private File file = null;
+
+        private long size = 0;
+
+        public Entry(File file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+
+        public File getFile() {
+            return this.file;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        public int compareTo(Entry other) {
+            return this.file.compareTo(other.file);
+        }
+    }
+
+    /**
+     * The discovered source files, ordered by path.
+     */
+    private List<Entry> entries = null;
+
+    /**
+     * Total size of all discovered files.
+     */
+    private long totalSize = 0;
+
+    /**
+     * Constructs a new manifest for the given entries.
+     *
+     * @param entries The discovered source files.
+     */
+    public SourceManifest(List<Entry> entries) {
+        this.entries = new ArrayList<Entry>(entries);
+        Collections.sort(this.entries);
+
+        for (Entry entry : this.entries) {
+            this.totalSize += entry.getSize();
+        }
+    }
+
+    /**
+     * Returns all discovered source files, ordered by path.
+     *
+     * @return The manifest entries.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    /**
+     * Returns all discovered source files, ordered by path.
+     *
+     * @return The source files.
+     */
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<File>(this.entries.size());
+        for (Entry entry : this.entries) {
+            files.add(entry.getFile());
+        }
+        return files;
+    }
+
+    /**
+     * Returns the number of discovered source files.
+     *
+     * @return The number of files.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the total size of all discovered source files.
+     *
+     * @return The size in bytes.
+     */
+    public long getTotalSize() {
+        return this.totalSize;
+    }
+
+    /**
+     * Returns a source list that contains each discovered file as a single
+     * source.
+     *
+     * @return The source list.
+     */
+    public SourceList toSourceList() {
+        SourceList sources = new SourceList();
+        for (Entry entry : this.entries) {
+            sources.add(new Source(entry.getFile()));
+        }
+        return sources;
+    }
+
+    /**
+     * Splits the discovered files into at most <b>count</b> balanced
+     * partitions. Files are assigned from the largest to the smallest one,
+     * each time to the partition with the lowest total weight, where the
+     * weight of a file is either one or its size in bytes.
+     *
+     * @param count        The maximum number of partitions, a value below
+     *        <b>1</b> is treated as <b>1</b>.
+     * @param partitioning The used partitioning strategy.
+     *
+     * @return The non empty partitions.
+     */
+    public List<SourceList> partition(int count, SourceList.Partitioning partitioning) {
+        List<Entry> sorted = new ArrayList<Entry>(this.entries);
+        if (partitioning == SourceList.Partitioning.BYTE_SIZE) {
+            Collections.sort(sorted, Collections.reverseOrder(new Comparator<Entry>() {
+                public int compare(Entry a, Entry b) {
+                    return (a.size < b.size ? -1 : (a.size > b.size ? 1 : 0));
+                }
+            }));
+        }
+
+        PriorityQueue<Partition> partitions = new PriorityQueue<Partition>();
+        for (int i = 0, n = Math.min(Math.max(1, count), sorted.size()); i < n; ++i) {
+            partitions.add(new Partition());
+        }
+        for (Entry entry : sorted) {
+            Partition partition = partitions.poll();
+            partition.add(entry, (partitioning == SourceList.Partitioning.BYTE_SIZE ? entry.size : 1));
+            partitions.add(partition);
+        }
+
+        List<SourceList> result = new ArrayList<SourceList>();
+        for (Partition partition : partitions) {
+            result.add(partition.sources);
+        }
+        return result;
+    }
+
+    /**
+     * A single partition of source files and their accumulated weight.
+     */
+    private static class Partition implements Comparable<Partition> {
+
+        private SourceList sources = new SourceList();
+
+        private long weight = 0;
+
+        private void add(Entry entry, long weight) {
+            this.sources.add(new Source(entry.getFile()));
+            this.weight += weight;
+        }
+
+        public int compareTo(Partition other) {
+            return (this.weight < other.weight ? -1 : (this.weight > other.weight ? 1 : 0));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Background thread that reads and discards everything written to a process
+ * stream. Each stream of a child process must be drained while the process
+ * is running, otherwise the process will block as soon as the operating
+ * system's pipe buffer is full.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class StreamDrainer extends Thread {
+
+    /**
+     * Size of the buffer used to read the stream.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The drained stream.
+     */
+    private InputStream stream = null;
+
+    /**
+     * Constructs a new drainer for the given stream.
+     *
+     * @param stream The stream to drain.
+     */
+    public StreamDrainer(InputStream stream) {
+        this.stream = stream;
+        this.setDaemon(true);
+    }
+
+    /**
+     * Reads the stream until it is exhausted.
+     */
+    @Override
+    public void run() {
+        drain(this.stream);
+    }
+
+    /**
+     * Reads the given stream in the current thread until it is exhausted and
+     * closes it afterwards.
+     *
+     * @param stream The stream to drain.
+     */
+    public static void drain(InputStream stream) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (stream.read(buffer) != -1) {
+            }
+        } catch (IOException ex) {
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+}
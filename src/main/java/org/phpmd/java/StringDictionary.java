@@ -0,0 +1,134 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * String dictionary that assigns a dense integer id to each distinct string,
+ * so that repeating strings can be stored in primitive columns. The id zero
+ * is reserved for <b>null</b>, the first distinct string gets the id one.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class StringDictionary {
+
+    /**
+     * The id of each string in this dictionary.
+     */
+    private Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    /**
+     * All strings of this dictionary indexed by their id.
+     */
+    private String[] strings = new String[16];
+
+    /**
+     * Returns the id of the given string and adds the string to this
+     * dictionary, when it is not yet part of it.
+     *
+     * @param string The context string, can be <b>null</b>.
+     *
+     * @return The id of the string.
+     */
+    public int add(String string) {
+        if (string == null) {
+            return 0;
+        }
+
+        Integer id = this.ids.get(string);
+        if (id == null) {
+            id = this.ids.size() + 1;
+            if (id == this.strings.length) {
+                this.strings = Arrays.copyOf(this.strings, id + (id >> 1));
+            }
+            this.strings[id] = string;
+            this.ids.put(string, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the given string without adding it.
+     *
+     * @param string The context string, can be <b>null</b>.
+     *
+     * @return The id of the string or <b>-1</b> when it is unknown.
+     */
+    public int getId(String string) {
+        if (string == null) {
+            return 0;
+        }
+
+        Integer id = this.ids.get(string);
+        return (id == null ? -1 : id);
+    }
+
+    /**
+     * Returns the string for the given id.
+     *
+     * @param id The id of a string in this dictionary.
+     *
+     * @return The string or <b>null</b> for the id zero.
+     */
+    public String get(int id) {
+        return this.strings[id];
+    }
+
+    /**
+     * Returns the number of ids used by this dictionary, including the id of
+     * <b>null</b>, so that it can be used as the length of arrays indexed by
+     * id.
+     *
+     * @return The number of ids.
+     */
+    public int size() {
+        return this.ids.size() + 1;
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+package org.phpmd.java;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The changed lines of all files in a unified diff. Only the new side of the
+ * diff is of interest, because phpmd analyzes the current state of the
+ * sources. A hunk that only removes lines marks the line in front of the
+ * removal as changed, so that violations of the surrounding code are still
+ * reported.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+public class UnifiedDiff {
+
+    /**
+     * Prefixes of the lines with the names of the old and the new file.
+     */
+    private static final String OLD_FILE_PREFIX = "--- ",
+                                NEW_FILE_PREFIX = "+++ ";
+
+    /**
+     * Encoding of the bytes in quoted file names.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Name used for the new side of a removed file.
+     */
+    private static final String DEV_NULL = "/dev/null";
+
+    /**
+     * Prefix that git adds to the name of the new file.
+     */
+    private static final String GIT_NEW_PREFIX = "b/";
+
+    /**
+     * Matches a hunk header, capturing the line count of the old side and
+     * the begin line and line count of the new side.
+     */
+    private static final Pattern HUNK_HEADER = Pattern.compile(
+            "^@@ -\\d+(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@"
+    );
+
+    /**
+     * Changed lines per canonical file path.
+     */
+    private Map<String, LineRangeIndex> files = new HashMap<String, LineRangeIndex>();
+
+    /**
+     * Parses a unified diff, relative file names in the diff are resolved
+     * against the given base directory.
+     *
+     * @param diff      The unified diff.
+     * @param directory Base directory for relative file names.
+     *
+     * @return The parsed diff.
+     *
+     * @throws IOException If the diff cannot be read.
+     */
+    public static UnifiedDiff parse(Reader diff, File directory) throws IOException {
+        UnifiedDiff result = new UnifiedDiff();
+
+        BufferedReader reader = new BufferedReader(diff);
+        LineRangeIndex lines = null;
+        boolean oldFile = false;
+        int oldRemaining = 0;
+        int newRemaining = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            // Removed and added lines can also start with "---" and "+++", so
+            // the lines of a hunk are counted and never taken as headers
+            if (oldRemaining > 0 || newRemaining > 0) {
+                if (line.startsWith("-")) {
+                    --oldRemaining;
+                } else if (line.startsWith("+")) {
+                    --newRemaining;
+                } else if (!line.startsWith("\\")) {
+                    --oldRemaining;
+                    --newRemaining;
+                }
+                continue;
+            }
+
+            if (line.startsWith(NEW_FILE_PREFIX) && oldFile) {
+                oldFile = false;
+                lines = result.addFile(line.substring(NEW_FILE_PREFIX.length()), directory);
+                continue;
+            }
+            oldFile = line.startsWith(OLD_FILE_PREFIX);
+
+            Matcher matcher = HUNK_HEADER.matcher(line);
+            if (!matcher.find()) {
+                continue;
+            }
+
+            oldRemaining = (matcher.group(1) == null ? 1 : Integer.parseInt(matcher.group(1)));
+            newRemaining = (matcher.group(3) == null ? 1 : Integer.parseInt(matcher.group(3)));
+            if (lines == null) {
+                continue;
+            }
+
+            int begin = Integer.parseInt(matcher.group(2));
+            int count = newRemaining;
+            if (count == 0) {
+                lines.add(Math.max(1, begin), Math.max(1, begin));
+            } else {
+                lines.add(begin, begin + count - 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a diff between the given base revision and the current working
+     * tree of a local git repository.
+     *
+     * @param repository A directory within the git working tree.
+     * @param baseRef    The base revision, for example a branch name.
+     *
+     * @return The parsed diff.
+     *
+     * @throws IOException If git cannot be executed or fails.
+     */
+    public static UnifiedDiff fromGit(File repository, String baseRef) throws IOException {
+        File root = new File(git(repository, "rev-parse", "--show-toplevel").trim());
+        String diff = git(
+                root,
+                "diff",
+                "--unified=0",
+                "--no-color",
+                "--no-ext-diff",
+                "--src-prefix=a/",
+                "--dst-prefix=b/",
+                baseRef,
+                "--"
+        );
+
+        return parse(new StringReader(diff), root);
+    }
+
+    /**
+     * Returns the changed lines of the given file.
+     *
+     * @param file The source file.
+     *
+     * @return The changed lines or <b>null</b> when the file was not changed.
+     */
+    public LineRangeIndex getChangedLines(File file) {
+        return this.files.get(canonicalPath(file));
+    }
+
+    /**
+     * Returns all files with changed lines in the new side of this diff.
+     *
+     * @return The changed files.
+     */
+    public List<File> getChangedFiles() {
+        List<File> result = new ArrayList<File>();
+        for (String path : this.files.keySet()) {
+            result.add(new File(path));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private LineRangeIndex addFile(String name, File directory) {
+        if (name.startsWith("\"")) {
+            name = unquote(name);
+        } else {
+            int tab = name.indexOf('\t');
+            if (tab != -1) {
+                name = name.substring(0, tab);
+            }
+        }
+        if (name.equals(DEV_NULL)) {
+            return null;
+        }
+        if (name.startsWith(GIT_NEW_PREFIX)) {
+            name = name.substring(GIT_NEW_PREFIX.length());
+        }
+
+        File file = new File(name);
+        if (!file.isAbsolute()) {
+            file = new File(directory, name);
+        }
+
+        String path = canonicalPath(file);
+        LineRangeIndex lines = this.files.get(path);
+        if (lines == null) {
+            lines = new LineRangeIndex();
+            this.files.put(path, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Decodes a file name that git quoted because it contains special
+     * characters. The name is enclosed in double quotes and uses C-style
+     * escapes, non ascii bytes are written as octal escapes of their UTF-8
+     * encoding.
+     */
+    static String unquote(String quoted) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 1; i < quoted.length(); ++i) {
+            char c = quoted.charAt(i);
+            if (c == '"') {
+                break;
+            }
+            if (c != '\\' || i + 1 == quoted.length()) {
+                byte[] encoded = String.valueOf(c).getBytes(UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                continue;
+            }
+
+            c = quoted.charAt(++i);
+            if (c >= '0' && c <= '3' && i + 2 < quoted.length()) {
+                bytes.write(Integer.parseInt(quoted.substring(i, i + 3), 8));
+                i += 2;
+                continue;
+            }
+            switch (c) {
+                case 'a': bytes.write(7); break;
+                case 'b': bytes.write('\b'); break;
+                case 't': bytes.write('\t'); break;
+                case 'n': bytes.write('\n'); break;
+                case 'v': bytes.write(11); break;
+                case 'f': bytes.write('\f'); break;
+                case 'r': bytes.write('\r'); break;
+                default: bytes.write(c); break;
+            }
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static String git(File directory, String... arguments) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add("git");
+        Collections.addAll(command, arguments);
+
+        Process process = new ProcessBuilder(command).directory(directory).start();
+        new StreamDrainer(process.getErrorStream()).start();
+
+        StringBuilder output = new StringBuilder();
+        Reader reader = new InputStreamReader(process.getInputStream(), "UTF-8");
+        try {
+            char[] buffer = new char[8192];
+            for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+                output.append(buffer, 0, n);
+            }
+        } finally {
+            reader.close();
+        }
+
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("git " + arguments[0] + " failed with exit code " + exitCode + ".");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for git.");
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,93 @@
+<?php
+/**
+ * This file is part of PHPMD Java binding project.
+ *
+ * Copyright (c) 2010, Manuel Pichler <mapi@phpmd.org>.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   * Neither the name of Manuel Pichler nor the names of his
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author    Manuel Pichler <mapi@phpmd.org>
+ * @copyright 2010 Manuel Pichler. All rights reserved.
+ * @license   http://www.opensource.org/licenses/bsd-license.php BSD License
+ * @version   SVN: $Id$
+ * @link      http://phpmd.org
+ */
+
+/**
+ * Long running phpmd worker used by the Java binding's worker pool. It loads
+ * phpmd only once and then serves analysis requests read from STDIN, so that
+ * the interpreter startup is not paid for every single request.
+ *
+ * Each request is a single line, either <b>PING</b>, answered with a single
+ * <b>PONG</b> line, or a tab separated list with the input path, the rule sets
+ * and the minimum priority, which is answered either with a line
+ * <b>OK &lt;length&gt;</b> followed by exactly &lt;length&gt; bytes of xml
+ * report or with a single line <b>ERROR &lt;message&gt;</b>.
+ */
+
+require_once 'PHP/PMD.php';
+require_once 'PHP/PMD/RuleSetFactory.php';
+require_once 'PHP/PMD/Writer/Stream.php';
+require_once 'PHP/PMD/Renderer/XMLRenderer.php';
+
+while (($line = fgets(STDIN)) !== false) {
+    $line = rtrim($line, "\r\n");
+    if ($line === 'PING') {
+        fwrite(STDOUT, "PONG\n");
+        fflush(STDOUT);
+        continue;
+    }
+
+    $stream = fopen('php://memory', 'w+');
+    try {
+        list($inputPath, $ruleSets, $priority) = explode("\t", $line);
+
+        $ruleSetFactory = new PHP_PMD_RuleSetFactory();
+        $ruleSetFactory->setMinimumPriority((int) $priority);
+
+        $renderer = new PHP_PMD_Renderer_XMLRenderer();
+        $renderer->setWriter(new PHP_PMD_Writer_Stream($stream));
+
+        $phpmd = new PHP_PMD();
+        $phpmd->processFiles($inputPath, $ruleSets, array($renderer), $ruleSetFactory);
+
+        $report = stream_get_contents($stream, -1, 0);
+        fwrite(STDOUT, 'OK ' . strlen($report) . "\n" . $report);
+    } catch (Exception $e) {
+        fwrite(STDOUT, 'ERROR ' . strtr($e->getMessage(), "\r\n", '  ') . "\n");
+    }
+    fflush(STDOUT);
+
+    unset($phpmd, $renderer, $ruleSetFactory);
+    if (is_resource($stream)) {
+        fclose($stream);
+    }
+}
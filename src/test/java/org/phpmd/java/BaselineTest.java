@@ -0,0 +1,156 @@
+package org.phpmd.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class BaselineTest {
+
+    private static final String RESOURCE_PATH = "_reports/";
+
+    @Test
+    public void baselineFiltersAllKnownViolations() throws Exception
+    {
+        Baseline baseline = new Baseline();
+        baseline.add(this.getReport());
+
+        assertEquals(0, baseline.filter(this.getReport()).getRuleViolations().size());
+    }
+
+    @Test
+    public void baselineKeepsNewViolations() throws Exception
+    {
+        Baseline baseline = new Baseline();
+        baseline.add(this.getReport());
+
+        Report report = this.getReport();
+        report.addRuleViolation(this.createViolation("/tmp/new.php", "Foo", 12, "Avoid 3 things."));
+
+        Report filtered = baseline.filter(report);
+
+        assertEquals(1, filtered.getRuleViolations().size());
+        assertEquals("/tmp/new.php", filtered.getRuleViolations().get(0).getFileName());
+    }
+
+    @Test
+    public void baselineIgnoresShiftedLines() throws Exception
+    {
+        Baseline baseline = new Baseline();
+        baseline.add(this.createViolation("/tmp/foo.php", "Foo", 12, "Avoid 3 things."));
+
+        assertTrue(baseline.contains(this.createViolation("/tmp/foo.php", "Foo", 42, "Avoid 3 things.")));
+    }
+
+    @Test
+    public void baselineNormalizesDescriptions() throws Exception
+    {
+        Baseline baseline = new Baseline();
+        baseline.add(this.createViolation("/tmp/foo.php", "Foo", 12, "Avoid 3 things."));
+
+        assertTrue(baseline.contains(this.createViolation("/tmp/foo.php", "Foo", 12, "  avoid 17\tTHINGS. ")));
+        assertFalse(baseline.contains(this.createViolation("/tmp/foo.php", "Foo", 12, "Avoid things.")));
+    }
+
+    @Test
+    public void baselineSuppressesEachKnownOccurrenceOnce() throws Exception
+    {
+        Baseline baseline = new Baseline();
+        baseline.add(this.createViolation("/tmp/foo.php", "Foo", 12, "Avoid 3 things."));
+        baseline.add(this.createViolation("/tmp/foo.php", "Foo", 20, "Avoid 3 things."));
+
+        Report report = new Report();
+        for (int i = 0; i < 3; ++i) {
+            report.addRuleViolation(this.createViolation("/tmp/foo.php", "Foo", i, "Avoid 3 things."));
+        }
+
+        assertEquals(1, baseline.filter(report).getRuleViolations().size());
+        assertEquals(1, baseline.filter(report).getRuleViolations().size());
+    }
+
+    @Test
+    public void baselineUsesFileNamesRelativeToBaseDirectory() throws Exception
+    {
+        Baseline baseline = new Baseline(new File("/tmp/a"));
+        baseline.add(this.createViolation("/tmp/a/src/foo.php", "Foo", 12, "Avoid 3 things."));
+
+        Baseline other = new Baseline(new File("/tmp/b"));
+
+        assertEquals(
+                baseline.fingerprint(this.createViolation("/tmp/a/src/foo.php", "Foo", 12, "Avoid 3 things.")),
+                other.fingerprint(this.createViolation("/tmp/b/src/foo.php", "Foo", 12, "Avoid 3 things."))
+        );
+    }
+
+    @Test
+    public void baselineUsesCanonicalPathOfBaseDirectory() throws Exception
+    {
+        File directory = Files.createTempDirectory("baseline").toFile().getCanonicalFile();
+        File link = new File(directory.getParentFile(), directory.getName() + "_link");
+        Files.createSymbolicLink(link.toPath(), directory.toPath());
+        link.deleteOnExit();
+        directory.deleteOnExit();
+
+        Baseline baseline = new Baseline(link);
+        Baseline other = new Baseline(new File("/tmp/b"));
+
+        assertEquals(
+                other.fingerprint(this.createViolation("/tmp/b/src/foo.php", "Foo", 12, "Avoid 3 things.")),
+                baseline.fingerprint(this.createViolation(directory.getPath() + "/src/foo.php", "Foo", 12, "Avoid 3 things."))
+        );
+        assertEquals(
+                other.fingerprint(this.createViolation("/tmp/b/src/foo.php", "Foo", 12, "Avoid 3 things.")),
+                baseline.fingerprint(this.createViolation(link.getPath() + "/src/foo.php", "Foo", 12, "Avoid 3 things."))
+        );
+    }
+
+    @Test
+    public void baselineRestoresWrittenFingerprints() throws Exception
+    {
+        Baseline baseline = new Baseline();
+        baseline.add(this.getReport());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        baseline.write(out);
+
+        Baseline restored = new Baseline();
+        restored.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(3, restored.size());
+        assertEquals(0, restored.filter(this.getReport()).getRuleViolations().size());
+    }
+
+    @Test(expected=IOException.class)
+    public void baselineThrowsExceptionForInvalidStream() throws Exception
+    {
+        new Baseline().read(new ByteArrayInputStream("<pmd />".getBytes("UTF-8")));
+    }
+
+    private RuleViolation createViolation(String fileName, String className, int line, String description)
+    {
+        RuleViolation violation = new RuleViolation();
+        violation.setFileName(fileName);
+        violation.setClassName(className);
+        violation.setMethodName("bar");
+        violation.setBeginLine(line);
+        violation.setEndLine(line);
+        violation.setRule("TooManyThings");
+        violation.setDescription(description);
+
+        return violation;
+    }
+
+    private Report getReport() throws Exception
+    {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(RESOURCE_PATH + "report.xml");
+        return new ReportParser().parse(in);
+    }
+}
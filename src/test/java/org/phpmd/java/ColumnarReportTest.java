@@ -0,0 +1,194 @@
+package org.phpmd.java;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class ColumnarReportTest {
+
+    private static final String RESOURCE_PATH = "_reports/";
+
+    @Test
+    public void reportCreatesViewsWithAllProperties() throws Exception
+    {
+        RuleViolation violation = this.getReport().getRuleViolations().get(1);
+
+        assertEquals("/tmp/unusedcode.php", violation.getFileName());
+        assertEquals("+global", violation.getPackageName());
+        assertEquals("Foo", violation.getClassName());
+        assertEquals("bar", violation.getMethodName());
+        assertEquals(2, violation.getBeginLine());
+        assertEquals(2, violation.getEndLine());
+        assertEquals("UnusedFormalParameter", violation.getRule());
+        assertEquals("Unused Code Rules", violation.getRuleSet());
+        assertEquals(3, violation.getPriority());
+        assertEquals("Avoid unused parameters such as '$param2'.", violation.getDescription());
+    }
+
+    @Test
+    public void reportCountsViolationsByFile() throws Exception
+    {
+        Map<String, Integer> counts = this.getReport().countByFile();
+
+        assertEquals(Integer.valueOf(1), counts.get("/tmp/complexity.php"));
+        assertEquals(Integer.valueOf(2), counts.get("/tmp/unusedcode.php"));
+    }
+
+    @Test
+    public void reportCountsViolationsByPriority() throws Exception
+    {
+        int[] counts = this.getReport().countByPriority();
+
+        assertEquals(1, counts[1]);
+        assertEquals(2, counts[3]);
+    }
+
+    @Test
+    public void reportGroupsViolationPositionsByFile() throws Exception
+    {
+        int[] group = this.getReport().groupByFile().get("/tmp/unusedcode.php");
+
+        assertArrayEquals(new int[] {1, 2}, group);
+    }
+
+    @Test
+    public void reportSortsViolationsByLocation() throws Exception
+    {
+        ColumnarReport report = new ColumnarReport();
+        report.addRuleViolation(this.createViolation("/tmp/b.php", 7));
+        report.addRuleViolation(this.createViolation("/tmp/a.php", 9));
+        report.addRuleViolation(this.createViolation("/tmp/b.php", 3));
+        report.addRuleViolation(this.createViolation("/tmp/a.php", 1));
+
+        assertArrayEquals(new int[] {3, 1, 2, 0}, report.sortByLocation());
+    }
+
+    @Test
+    public void reportFiltersViolationsByMinimumPriority() throws Exception
+    {
+        assertEquals(1, this.getReport().filter(new Priority(1)).getRuleViolations().size());
+    }
+
+    @Test
+    public void reportReturnsViolationsByRule() throws Exception
+    {
+        assertEquals(1, this.getReport().getRuleViolationsByRule("UnusedPrivateMethod").size());
+    }
+
+    @Test
+    public void reportGrowsBeyondInitialCapacity() throws Exception
+    {
+        ColumnarReport report = new ColumnarReport();
+        for (int i = 0; i < 1000; ++i) {
+            report.addRuleViolation(this.createViolation("/tmp/" + (i % 10) + ".php", i));
+        }
+
+        assertEquals(1000, report.size());
+        assertEquals(999, report.getRuleViolations().get(999).getBeginLine());
+        assertEquals(10, report.countByFile().size());
+    }
+
+    @Test
+    public void reportCompactsColumnsWhenViolationsAreRemoved() throws Exception
+    {
+        ColumnarReport report = this.getReport();
+
+        assertEquals(1, report.removeRuleViolations("/tmp/complexity.php").size());
+        assertEquals(2, report.size());
+        assertEquals("UnusedPrivateMethod", report.getRule(1));
+        assertEquals(7, report.getBeginLine(1));
+    }
+
+    @Test
+    public void reportReturnsViolationsByMethod() throws Exception
+    {
+        ReportIndex index = this.getReport().getIndex();
+
+        assertEquals(1, index.getByMethod("Foo", "bar").size());
+        assertEquals("UnusedFormalParameter", index.getByMethod("Foo", "bar").get(0).getRule());
+        assertEquals(0, index.getByMethod("Foo", "qux").size());
+    }
+
+    @Test
+    public void reportReturnsViolationsOverlappingLineRange() throws Exception
+    {
+        ColumnarReport report = this.getReport();
+
+        assertEquals(1, report.getRuleViolations("/tmp/complexity.php", 40, 50).size());
+        assertEquals(0, report.getRuleViolations("/tmp/unusedcode.php", 3, 6).size());
+        assertEquals(2, report.getRuleViolations("/tmp/unusedcode.php", 1, 7).size());
+        assertEquals(0, report.getRuleViolations("/tmp/unknown.php", 1, 7).size());
+    }
+
+    @Test
+    public void reportIndexCountsViolationsPerClass() throws Exception
+    {
+        Map<String, Integer> counts = this.getReport().getIndex().countByClass();
+
+        assertEquals(Integer.valueOf(2), counts.get("Foo"));
+        assertEquals(2, counts.size());
+    }
+
+    @Test
+    public void columnarReportReturnsViolationsUnaffectedByLaterChanges() throws Exception
+    {
+        Report report = this.getReport();
+
+        List<RuleViolation> violations = report.getRuleViolations();
+        for (RuleViolation violation : violations) {
+            report.addRuleViolation(violation);
+        }
+        report.removeRuleViolations("/tmp/unusedcode.php");
+
+        assertEquals(3, violations.size());
+        assertEquals(2, report.getRuleViolations().size());
+    }
+
+    @Test
+    public void reportRebuildsIndexWhenViolationIsAdded() throws Exception
+    {
+        ColumnarReport report = this.getReport();
+        ReportIndex index = report.getIndex();
+        index.getByFile("/tmp/a.php");
+        report.addRuleViolation(this.createViolation("/tmp/a.php", 3));
+
+        assertEquals(0, index.getByFile("/tmp/a.php").size());
+        assertEquals(1, report.getIndex().getByFile("/tmp/a.php").size());
+    }
+
+    @Test
+    public void reportKeepsDescriptionsWhenViolationsAreRemoved() throws Exception
+    {
+        ColumnarReport report = this.getReport();
+        report.removeRuleViolations("/tmp/complexity.php");
+
+        assertEquals("Avoid unused private methods such as 'baz'.", report.getRuleViolation(1).getDescription());
+    }
+
+    private RuleViolation createViolation(String fileName, int line)
+    {
+        RuleViolation violation = new RuleViolation();
+        violation.setFileName(fileName);
+        violation.setBeginLine(line);
+        violation.setEndLine(line);
+        violation.setRule("TooManyThings");
+
+        return violation;
+    }
+
+    private ColumnarReport getReport() throws Exception
+    {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(RESOURCE_PATH + "report.xml");
+
+        ColumnarReport report = new ColumnarReport();
+        new ReportParser().parse(in, report);
+
+        return report;
+    }
+}
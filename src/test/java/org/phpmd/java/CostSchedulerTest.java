@@ -0,0 +1,168 @@
+package org.phpmd.java;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class CostSchedulerTest {
+
+    @Test
+    public void durationStoreEstimatesUnknownFilesBySize() throws Exception
+    {
+        DurationStore store = new DurationStore(this.getTempResource());
+
+        assertEquals(100.0, store.estimate(new File("/tmp/a.php"), 100), 0.0);
+    }
+
+    @Test
+    public void durationStoreEstimatesRecordedFilesByDuration() throws Exception
+    {
+        DurationStore store = new DurationStore(this.getTempResource());
+        store.record(Arrays.asList(this.createEntry("/tmp/a.php", 100)), 5000);
+
+        assertEquals(5000.0, store.estimate(new File("/tmp/a.php"), 100), 0.0);
+    }
+
+    @Test
+    public void durationStoreEstimatesUnknownFilesByDirectoryRate() throws Exception
+    {
+        DurationStore store = new DurationStore(this.getTempResource());
+        store.record(Arrays.asList(this.createEntry("/tmp/a.php", 100)), 5000);
+
+        assertEquals(1000.0, store.estimate(new File("/tmp/b.php"), 20), 0.0);
+    }
+
+    @Test
+    public void durationStoreSplitsDurationByEstimate() throws Exception
+    {
+        DurationStore store = new DurationStore(this.getTempResource());
+        store.record(Arrays.asList(this.createEntry("/tmp/a.php", 300), this.createEntry("/tmp/b.php", 100)), 4000);
+
+        assertEquals(3000.0, store.estimate(new File("/tmp/a.php"), 300), 0.0);
+        assertEquals(1000.0, store.estimate(new File("/tmp/b.php"), 100), 0.0);
+    }
+
+    @Test
+    public void durationStoreReadsSavedDurations() throws Exception
+    {
+        File file = this.getTempResource();
+
+        DurationStore store = new DurationStore(file);
+        store.record(Arrays.asList(this.createEntry("/tmp/a.php", 100)), 5000);
+        store.save();
+
+        DurationStore loaded = new DurationStore(file);
+
+        assertEquals(1, loaded.size());
+        assertEquals(5000.0, loaded.estimate(new File("/tmp/a.php"), 100), 0.0);
+    }
+
+    @Test
+    public void durationStoreReplacesExistingStoreFile() throws Exception
+    {
+        File file = this.getTempResource();
+
+        DurationStore store = new DurationStore(file);
+        store.record(Arrays.asList(this.createEntry("/tmp/a.php", 100)), 5000);
+        store.save();
+        store.record(Arrays.asList(this.createEntry("/tmp/b.php", 100)), 5000);
+        store.save();
+
+        assertEquals(2, new DurationStore(file).size());
+    }
+
+    @Test
+    public void durationStoreDropsFilesMissingInManifest() throws Exception
+    {
+        File file = this.getTempResource();
+
+        DurationStore store = new DurationStore(file);
+        store.record(Arrays.asList(this.createEntry("/tmp/a.php", 100), this.createEntry("/tmp/b.php", 100)), 5000);
+        store.retain(new SourceManifest(Arrays.asList(this.createEntry("/tmp/b.php", 100))));
+        store.save();
+
+        DurationStore loaded = new DurationStore(file);
+
+        assertEquals(1, loaded.size());
+        assertEquals(2500.0, loaded.estimate(new File("/tmp/b.php"), 100), 0.0);
+    }
+
+    @Test
+    public void schedulerBalancesCostOverWorkers() throws Exception
+    {
+        DurationStore store = new DurationStore(this.getTempResource());
+        CostScheduler scheduler = new CostScheduler(
+                store,
+                this.createManifest(80, 70, 40, 30, 20, 10, 10, 10, 5, 5),
+                2
+        );
+
+        double first = 0, second = 0;
+        for (CostScheduler.Chunk chunk = scheduler.next(0); chunk != null; chunk = scheduler.next(0)) {
+            first += chunk.getCost();
+            CostScheduler.Chunk other = scheduler.next(1);
+            second += (other == null ? 0 : other.getCost());
+        }
+
+        assertEquals(2, scheduler.getWorkers());
+        assertEquals(first, second, 0.0);
+    }
+
+    @Test
+    public void schedulerLimitsWorkersToNumberOfFiles() throws Exception
+    {
+        DurationStore store = new DurationStore(this.getTempResource());
+        CostScheduler scheduler = new CostScheduler(store, this.createManifest(10, 20), 8);
+
+        assertEquals(2, scheduler.getWorkers());
+    }
+
+    @Test
+    public void schedulerLetsIdleWorkerStealQueuedChunks() throws Exception
+    {
+        DurationStore store = new DurationStore(this.getTempResource());
+        CostScheduler scheduler = new CostScheduler(store, this.createManifest(80, 70, 40, 30, 20, 10), 2);
+
+        Set<File> files = new HashSet<File>();
+        for (CostScheduler.Chunk chunk = scheduler.next(0); chunk != null; chunk = scheduler.next(0)) {
+            for (SourceManifest.Entry entry : chunk.getEntries()) {
+                assertTrue(files.add(entry.getFile()));
+            }
+        }
+
+        assertEquals(6, files.size());
+        assertNull(scheduler.next(1));
+    }
+
+    private SourceManifest createManifest(long... sizes)
+    {
+        List<SourceManifest.Entry> entries = new ArrayList<SourceManifest.Entry>();
+        for (int i = 0; i < sizes.length; ++i) {
+            entries.add(this.createEntry("/tmp/file" + i + ".php", sizes[i]));
+        }
+        return new SourceManifest(entries);
+    }
+
+    private SourceManifest.Entry createEntry(String fileName, long size)
+    {
+        return new SourceManifest.Entry(new File(fileName), size);
+    }
+
+    private File getTempResource() throws Exception
+    {
+        File file = File.createTempFile("temp_", ".temp");
+        file.delete();
+        file.deleteOnExit();
+
+        return file;
+    }
+}
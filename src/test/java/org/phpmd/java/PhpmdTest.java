@@ -7,7 +7,14 @@ package org.phpmd.java;
 
 import de.xplib.execution.ValidationException;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -108,6 +115,60 @@ public class PhpmdTest {
         assertEquals(2, phpmd.run().getRuleViolations().size());
     }
 
+    @Test
+    public void cliToolPassesViolationsToListener() throws Exception
+    {
+        final Report report = new Report();
+
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource("complexity.php"));
+        phpmd.addSource(this.getResource("complexity2.php"));
+        phpmd.addRuleSet("codesize");
+        phpmd.run(new ViolationListener() {
+            public void ruleViolation(RuleViolation violation) {
+                report.addRuleViolation(violation);
+            }
+        });
+
+        assertEquals(2, report.getRuleViolations().size());
+    }
+
+    @Test
+    public void cliToolRunAsyncCompletesWithReport() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource("complexity.php"));
+        phpmd.addSource(this.getResource("complexity2.php"));
+        phpmd.addRuleSet("codesize");
+
+        assertEquals(2, phpmd.runAsync().get().getRuleViolations().size());
+    }
+
+    @Test
+    public void cliToolRecordsMetricsOfLastRun() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource("complexity.php"));
+        phpmd.addSource(this.getResource("complexity2.php"));
+        phpmd.addRuleSet("codesize");
+        phpmd.run();
+
+        assertEquals(2, phpmd.getMetrics().getViolations());
+        assertEquals(Phpmd.EXIT_CODE_VIOLATION.intValue(), phpmd.getMetrics().getExitCode());
+    }
+
+    @Test
+    public void cliToolRecordsMetricsOfReportFileRun() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource("complexity.php"));
+        phpmd.addSource(this.getResource("complexity2.php"));
+        phpmd.addRuleSet("codesize");
+        phpmd.run(this.getTempResource());
+
+        assertEquals(Phpmd.EXIT_CODE_VIOLATION.intValue(), phpmd.getMetrics().getExitCode());
+    }
+
     @Test
     public void cliToolHandlesInputSourceDirectory() throws Exception
     {
@@ -129,6 +190,315 @@ public class PhpmdTest {
         assertEquals(3, phpmd.run().getRuleViolations().size());
     }
 
+    @Test
+    public void cliToolMergesReportsOfShardedRun() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource(""));
+        phpmd.addRuleSet("codesize");
+        phpmd.addRuleSet("unusedcode");
+
+        assertEquals(3, phpmd.run(2).getRuleViolations().size());
+    }
+
+    @Test
+    public void cliToolTreatsShardCountBelowOneAsSingleShard() throws Exception
+    {
+        TimeoutPhpmd phpmd = new TimeoutPhpmd();
+        phpmd.addSource(this.getTempDirectory("a.php", "b.php"));
+        phpmd.addRuleSet("codesize");
+
+        assertEquals(2, phpmd.run(0).getRuleViolations().size());
+        assertEquals(1, phpmd.runs);
+    }
+
+    @Test
+    public void cliToolMergesReportsOfRuleSetFanOut() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource(""));
+        phpmd.addRuleSet("codesize");
+        phpmd.addRuleSet("unusedcode");
+
+        assertEquals(3, phpmd.runPerRuleSet().getRuleViolations().size());
+    }
+
+    @Test
+    public void cliToolMergesReportsOfBatchedSourceList() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource("complexity.php"));
+        phpmd.addSource(this.getResource("complexity2.php"));
+        phpmd.addSource(this.getResource("unusedcode.php"));
+        phpmd.addRuleSet("codesize");
+        phpmd.addRuleSet("unusedcode");
+        phpmd.setArgumentLimit(1);
+        phpmd.setBatchConcurrency(2);
+
+        assertEquals(3, phpmd.run().getRuleViolations().size());
+    }
+
+    @Test
+    public void cliToolSummarizesViolationsOfAllSources() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource(""));
+        phpmd.addRuleSet("codesize");
+        phpmd.addRuleSet("unusedcode");
+
+        ReportSummary summary = phpmd.runSummary();
+
+        assertEquals(3, summary.getViolations());
+        assertEquals(3, summary.countByRule().size());
+    }
+
+    @Test
+    public void cliToolKeepsFirstErrorExitCodeOfBatches() throws Exception
+    {
+        assertEquals(Integer.valueOf(1), Phpmd.mergeExitCodes(1, Phpmd.EXIT_CODE_VIOLATION));
+        assertEquals(Integer.valueOf(42), Phpmd.mergeExitCodes(Phpmd.EXIT_CODE_VIOLATION, 42));
+        assertEquals(Integer.valueOf(1), Phpmd.mergeExitCodes(1, 42));
+    }
+
+    @Test
+    public void cliToolReturnsViolationExitCodeOfAnyBatch() throws Exception
+    {
+        assertEquals(Phpmd.EXIT_CODE_VIOLATION, Phpmd.mergeExitCodes(Phpmd.EXIT_CODE_SUCCESS, Phpmd.EXIT_CODE_VIOLATION));
+        assertEquals(Phpmd.EXIT_CODE_VIOLATION, Phpmd.mergeExitCodes(Phpmd.EXIT_CODE_VIOLATION, Phpmd.EXIT_CODE_SUCCESS));
+        assertEquals(Phpmd.EXIT_CODE_SUCCESS, Phpmd.mergeExitCodes(Phpmd.EXIT_CODE_SUCCESS, Phpmd.EXIT_CODE_SUCCESS));
+    }
+
+    @Test
+    public void cliToolSkipsExcludedSourceFiles() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource(""));
+        phpmd.addRuleSet("codesize");
+        phpmd.addRuleSet("unusedcode");
+        phpmd.addExclude("unusedcode.php");
+
+        assertEquals(2, phpmd.run().getRuleViolations().size());
+    }
+
+    @Test
+    public void cliToolWatcherStartsWithReportOfAllSources() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource(""));
+        phpmd.addRuleSet("codesize");
+        phpmd.addRuleSet("unusedcode");
+
+        PhpmdWatcher watcher = phpmd.watch();
+        try {
+            assertEquals(3, watcher.getReport().getRuleViolations().size());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void cliToolWatcherReportsViolationsOfNewFile() throws Exception
+    {
+        File root = this.getTempDirectory("a.php");
+
+        TimeoutPhpmd phpmd = new TimeoutPhpmd();
+        phpmd.addSource(root);
+        phpmd.addRuleSet("codesize");
+        phpmd.setTimeout(1, TimeUnit.MINUTES);
+
+        RecordingWatchListener listener = new RecordingWatchListener();
+        PhpmdWatcher watcher = phpmd.watch(50, TimeUnit.MILLISECONDS);
+        try {
+            watcher.addListener(listener);
+            this.createFile(root, "b.php");
+
+            List<RuleViolation> added = listener.changes.poll(30, TimeUnit.SECONDS);
+
+            assertNotNull(added);
+            assertEquals(1, added.size());
+            assertEquals("b.php", new File(added.get(0).getFileName()).getName());
+            assertEquals(2, watcher.getReport().getRuleViolations().size());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void cliToolWatcherRemovesViolationsOfMovedDirectory() throws Exception
+    {
+        File root = this.getTempDirectory("a.php");
+        File directory = new File(root, "sub");
+        directory.mkdir();
+        this.createFile(directory, "b.php");
+        this.createFile(directory, "c.php");
+
+        TimeoutPhpmd phpmd = new TimeoutPhpmd();
+        phpmd.addSource(root);
+        phpmd.addRuleSet("codesize");
+        phpmd.setTimeout(1, TimeUnit.MINUTES);
+
+        RecordingWatchListener listener = new RecordingWatchListener();
+        PhpmdWatcher watcher = phpmd.watch(50, TimeUnit.MILLISECONDS);
+        try {
+            assertEquals(3, watcher.getReport().getRuleViolations().size());
+
+            watcher.addListener(listener);
+            File target = this.getTempResource();
+            target.delete();
+            assertTrue(directory.renameTo(target));
+
+            assertNotNull(listener.changes.poll(30, TimeUnit.SECONDS));
+            assertEquals(2, listener.removed.size());
+            assertEquals(1, watcher.getReport().getRuleViolations().size());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void cliToolWatcherReportsFailedUpdate() throws Exception
+    {
+        File root = this.getTempDirectory("a.php");
+
+        TimeoutPhpmd phpmd = new TimeoutPhpmd();
+        phpmd.addSource(root);
+        phpmd.addRuleSet("codesize");
+        phpmd.setTimeout(1, TimeUnit.MINUTES);
+
+        RecordingWatchListener listener = new RecordingWatchListener();
+        PhpmdWatcher watcher = phpmd.watch(50, TimeUnit.MILLISECONDS);
+        try {
+            watcher.addListener(listener);
+            this.createFile(root, "broken.php");
+
+            List<File> failed = listener.failures.poll(30, TimeUnit.SECONDS);
+
+            assertNotNull(failed);
+            assertEquals("broken.php", failed.get(0).getName());
+            assertEquals(1, watcher.getReport().getRuleViolations().size());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void cliToolWatcherReportsUpdateWithPhpmdError() throws Exception
+    {
+        this.assertWatcherReportsFailedUpdate("failing.php");
+    }
+
+    @Test
+    public void cliToolWatcherReportsUpdateWithTimedOutFile() throws Exception
+    {
+        this.assertWatcherReportsFailedUpdate("slow.php");
+    }
+
+    private void assertWatcherReportsFailedUpdate(String fileName) throws Exception
+    {
+        File root = this.getTempDirectory("a.php");
+
+        TimeoutPhpmd phpmd = new TimeoutPhpmd();
+        phpmd.addSource(root);
+        phpmd.addRuleSet("codesize");
+        phpmd.setTimeout(1, TimeUnit.MINUTES);
+
+        RecordingWatchListener listener = new RecordingWatchListener();
+        PhpmdWatcher watcher = phpmd.watch(50, TimeUnit.MILLISECONDS);
+        try {
+            watcher.addListener(listener);
+            this.createFile(root, fileName);
+            this.createFile(root, "a.php");
+
+            // Both files fail together, once the changed a.php was picked up
+            List<File> failed = listener.failures.poll(30, TimeUnit.SECONDS);
+            while (failed != null && failed.size() < 2) {
+                failed = listener.failures.poll(30, TimeUnit.SECONDS);
+            }
+
+            assertNotNull(failed);
+            assertEquals(1, watcher.getReport().getRuleViolations().size());
+            assertEquals(0, listener.removed.size());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void cliToolReportsNoTimedOutFilesForFastRun() throws Exception
+    {
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource(""));
+        phpmd.addRuleSet("codesize");
+        phpmd.addRuleSet("unusedcode");
+        phpmd.setTimeout(5, TimeUnit.MINUTES);
+
+        Report report = phpmd.run();
+
+        assertEquals(3, report.getRuleViolations().size());
+        assertEquals(0, report.getTimedOutFiles().size());
+    }
+
+    @Test
+    public void cliToolIsolatesSourceFilesThatTimeOut() throws Exception
+    {
+        File root = this.getTempDirectory("a.php", "b.php", "slow.php", "c.php", "d.php");
+
+        TimeoutPhpmd phpmd = new TimeoutPhpmd();
+        phpmd.addSource(root);
+        phpmd.addRuleSet("codesize");
+        phpmd.setTimeout(1, TimeUnit.MINUTES);
+
+        Report report = phpmd.run();
+
+        assertEquals(4, report.getRuleViolations().size());
+        assertEquals(1, report.getTimedOutFiles().size());
+        assertEquals("slow.php", new File(report.getTimedOutFiles().get(0)).getName());
+        assertTrue(phpmd.runs > 2);
+    }
+
+    @Test
+    public void cliToolDoesNotCacheSourceFilesThatTimeOut() throws Exception
+    {
+        File root = this.getTempDirectory("a.php", "slow.php");
+        File cache = this.getTempResource();
+        cache.delete();
+
+        TimeoutPhpmd phpmd = new TimeoutPhpmd();
+        phpmd.addSource(root);
+        phpmd.addRuleSet("codesize");
+        phpmd.setTimeout(1, TimeUnit.MINUTES);
+        phpmd.setCacheDirectory(cache);
+
+        assertEquals(1, phpmd.run().getTimedOutFiles().size());
+
+        phpmd.runs = 0;
+        Report report = phpmd.run();
+
+        assertEquals(1, report.getRuleViolations().size());
+        assertEquals(1, report.getTimedOutFiles().size());
+        assertEquals(1, phpmd.runs);
+    }
+
+    @Test
+    public void cliToolReturnsCachedViolationsForUnchangedFiles() throws Exception
+    {
+        File cache = this.getTempResource();
+        cache.delete();
+
+        Phpmd phpmd = new Phpmd();
+        phpmd.addSource(this.getResource(""));
+        phpmd.addRuleSet("codesize");
+        phpmd.addRuleSet("unusedcode");
+        phpmd.setCacheDirectory(cache);
+        phpmd.run();
+
+        CountingMetricsListener runs = new CountingMetricsListener();
+        phpmd.setMetricsListener(runs);
+
+        assertEquals(3, phpmd.run().getRuleViolations().size());
+        assertEquals(0, runs.count);
+    }
+
     @Test
     public void cliToolHandlesMinPriorityAsExpected() throws Exception
     {
@@ -179,12 +549,108 @@ public class PhpmdTest {
         assertEquals(Phpmd.EXIT_CODE_SUCCESS, phpmd.run(report));
     }
 
+    /**
+     * Reports one violation for each analyzed file, but times out for each
+     * file list that contains a file named <b>slow.php</b> and fails for
+     * each file list that contains a file named <b>broken.php</b>.
+     */
+    private static class TimeoutPhpmd extends Phpmd {
+
+        private int runs = 0;
+
+        @Override
+        Report run(SourceList sources, RuleSets ruleSets) {
+            synchronized (this) {
+                ++this.runs;
+            }
+
+            Report report = new Report();
+            for (File file : sources.getFiles()) {
+                if (file.getName().equals("slow.php")) {
+                    throw new ProcessTimeoutException(false, TimeUnit.MINUTES.toNanos(1));
+                }
+                if (file.getName().equals("broken.php")) {
+                    throw new IllegalStateException("Cannot analyze " + file + ".");
+                }
+                if (file.getName().equals("failing.php")) {
+                    // Like a phpmd process that exits with an error code
+                    report.markIncomplete();
+                    continue;
+                }
+                RuleViolation violation = new RuleViolation();
+                try {
+                    violation.setFileName(file.getCanonicalPath());
+                } catch (IOException ex) {
+                    violation.setFileName(file.getAbsolutePath());
+                }
+                violation.setRule("TestRule");
+                violation.setBeginLine(1);
+                violation.setEndLine(1);
+                violation.setDescription("Test violation.");
+                report.addRuleViolation(violation);
+            }
+            return report;
+        }
+    }
+
+    private static class RecordingWatchListener implements WatchListener {
+
+        private BlockingQueue<List<RuleViolation>> changes = new LinkedBlockingQueue<List<RuleViolation>>();
+
+        private BlockingQueue<List<File>> failures = new LinkedBlockingQueue<List<File>>();
+
+        private List<RuleViolation> removed = new CopyOnWriteArrayList<RuleViolation>();
+
+        public void reportChanged(List<RuleViolation> added, List<RuleViolation> removed) {
+            this.removed.addAll(removed);
+            this.changes.add(added);
+        }
+
+        public void updateFailed(List<File> files, RuntimeException cause) {
+            this.failures.add(files);
+        }
+    }
+
+    private static class CountingMetricsListener extends MetricsAdapter {
+
+        private int count = 0;
+
+        @Override
+        public synchronized void runCompleted(RunMetrics metrics) {
+            ++this.count;
+        }
+    }
+
     private File getResource(String name) throws Exception
     {
         URL url = getClass().getClassLoader().getResource(RESOURCE_PATH + name);
         return new File(url.toURI());
     }
 
+    private File getTempDirectory(String... fileNames) throws Exception
+    {
+        File directory = this.getTempResource();
+        directory.delete();
+        directory.mkdir();
+        directory.deleteOnExit();
+
+        for (String fileName : fileNames) {
+            this.createFile(directory, fileName);
+        }
+        return directory;
+    }
+
+    private File createFile(File directory, String fileName) throws Exception
+    {
+        File file = new File(directory, fileName);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(("<?php\n// " + fileName + "\n").getBytes("UTF-8"));
+        out.close();
+        file.deleteOnExit();
+
+        return file;
+    }
+
     private File getTempResource() throws Exception
     {
         File file = File.createTempFile("temp_", ".temp");
@@ -0,0 +1,179 @@
+package org.phpmd.java;
+
+import de.xplib.execution.ValidationException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the line based protocol between {@link PhpmdWorker} and a fake
+ * worker process.
+ *
+ * @author manu
+ */
+public class PhpmdWorkerTest {
+
+    /**
+     * Shell script that speaks the worker protocol. It answers the rule set
+     * <em>bad</em> with an error and every other request with a report that
+     * contains one violation for the requested source.
+     */
+    private static final String FAKE_WORKER =
+            "while IFS=$(printf '\\t') read -r sources rulesets priority; do\n"
+            + "  if [ \"$sources\" = PING ]; then echo PONG; continue; fi\n"
+            + "  if [ \"$rulesets\" = bad ]; then echo \"ERROR Cannot find rule set $rulesets\"; continue; fi\n"
+            + "  report=\"<?xml version=\\\"1.0\\\"?><pmd><file name=\\\"$sources\\\">"
+            + "<violation beginline=\\\"1\\\" endline=\\\"2\\\" rule=\\\"Fake\\\" ruleset=\\\"$rulesets\\\""
+            + " priority=\\\"$priority\\\">Fake violation</violation></file></pmd>\"\n"
+            + "  printf 'OK %d\\n%s' \"$(printf '%s' \"$report\" | wc -c)\" \"$report\"\n"
+            + "done\n";
+
+    private PhpmdWorker worker = null;
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (this.worker != null) {
+            this.worker.destroy();
+        }
+    }
+
+    @Test
+    public void workerAnswersPingWithPong() throws Exception
+    {
+        assertTrue(this.createWorker().ping());
+    }
+
+    @Test
+    public void workerPassesReportedViolationsToListener() throws Exception
+    {
+        List<RuleViolation> violations = new ArrayList<RuleViolation>();
+
+        int count = this.createWorker().analyze(
+                this.createSources("/tmp/foo.php"),
+                this.createRuleSets("codesize"),
+                new Priority(2),
+                this.createListener(violations)
+        );
+
+        assertEquals(1, count);
+        assertEquals(1, violations.size());
+        assertEquals("/tmp/foo.php", violations.get(0).getFileName());
+        assertEquals("codesize", violations.get(0).getRuleSet());
+        assertEquals(2, violations.get(0).getPriority());
+    }
+
+    @Test
+    public void workerReadsConsecutiveResponsesOfOneProcess() throws Exception
+    {
+        List<RuleViolation> violations = new ArrayList<RuleViolation>();
+        PhpmdWorker fake = this.createWorker();
+
+        fake.analyze(this.createSources("/tmp/foo.php"), this.createRuleSets("codesize"), new Priority(), this.createListener(violations));
+        assertTrue(fake.ping());
+        fake.analyze(this.createSources("/tmp/bar.php"), this.createRuleSets("unusedcode"), new Priority(), this.createListener(violations));
+
+        assertEquals(2, violations.size());
+        assertEquals("/tmp/bar.php", violations.get(1).getFileName());
+        assertEquals(2, fake.getJobs());
+    }
+
+    @Test
+    public void workerThrowsErrorResponseAsIOException() throws Exception
+    {
+        PhpmdWorker fake = this.createWorker();
+        try {
+            fake.analyze(this.createSources("/tmp/foo.php"), this.createRuleSets("bad"), new Priority(), this.createListener(new ArrayList<RuleViolation>()));
+            fail("Expected an IOException.");
+        } catch (IOException ex) {
+            assertEquals("Cannot find rule set bad", ex.getMessage());
+        }
+        assertTrue(fake.ping());
+    }
+
+    @Test(expected=ValidationException.class)
+    public void workerRejectsSourceWithTab() throws Exception
+    {
+        this.createWorker().analyze(this.createSources("/tmp/foo\tbar.php"), this.createRuleSets("codesize"), new Priority(), this.createListener(new ArrayList<RuleViolation>()));
+    }
+
+    @Test(expected=ValidationException.class)
+    public void workerRejectsSourceWithLineBreak() throws Exception
+    {
+        this.createWorker().analyze(this.createSources("/tmp/foo\nbar.php"), this.createRuleSets("codesize"), new Priority(), this.createListener(new ArrayList<RuleViolation>()));
+    }
+
+    @Test(expected=ValidationException.class)
+    public void workerPoolRejectsSizeOfZero() throws Exception
+    {
+        new PhpmdWorkerPool(0);
+    }
+
+    @Test
+    public void boundedInputStreamStopsAtLength() throws Exception
+    {
+        InputStream stream = new ByteArrayInputStream("abcdef".getBytes("UTF-8"));
+        InputStream bounded = new PhpmdWorker.BoundedInputStream(stream, 4);
+
+        byte[] buffer = new byte[10];
+        assertEquals('a', bounded.read());
+        assertEquals(3, bounded.read(buffer, 0, buffer.length));
+        assertEquals(-1, bounded.read());
+        assertEquals(-1, bounded.read(buffer, 0, buffer.length));
+        assertEquals('e', stream.read());
+    }
+
+    @Test
+    public void boundedInputStreamSkipsRemainderOnClose() throws Exception
+    {
+        InputStream stream = new ByteArrayInputStream("abcdef".getBytes("UTF-8"));
+        InputStream bounded = new PhpmdWorker.BoundedInputStream(stream, 4);
+
+        assertEquals('a', bounded.read());
+        bounded.close();
+        assertEquals('e', stream.read());
+    }
+
+    @Test(expected=IOException.class)
+    public void boundedInputStreamThrowsExceptionOnTruncatedInput() throws Exception
+    {
+        InputStream bounded = new PhpmdWorker.BoundedInputStream(new ByteArrayInputStream("ab".getBytes("UTF-8")), 4);
+        bounded.close();
+    }
+
+    private PhpmdWorker createWorker() throws IOException
+    {
+        this.worker = new PhpmdWorker(Arrays.asList("sh", "-c", FAKE_WORKER));
+        return this.worker;
+    }
+
+    private SourceList createSources(String fileName)
+    {
+        SourceList sources = new SourceList();
+        sources.add(new Source(new File(fileName)));
+        return sources;
+    }
+
+    private RuleSets createRuleSets(String name)
+    {
+        RuleSets ruleSets = new RuleSets();
+        ruleSets.add(new RuleSet(name));
+        return ruleSets;
+    }
+
+    private ViolationListener createListener(final List<RuleViolation> violations)
+    {
+        return new ViolationListener() {
+            public void ruleViolation(RuleViolation violation) {
+                violations.add(violation);
+            }
+        };
+    }
+}
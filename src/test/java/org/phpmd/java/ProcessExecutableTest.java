@@ -0,0 +1,117 @@
+package org.phpmd.java;
+
+import de.xplib.execution.ExecutableUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class ProcessExecutableTest {
+
+    @Test
+    public void executableDestroysProcessAfterTimeout() throws Exception
+    {
+        ProcessExecutable script = this.createExecutable();
+        script.setTimeout(200, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        try {
+            script.doExecute(this.start("sleep 30"));
+            fail("Expected a ProcessTimeoutException.");
+        } catch (ProcessTimeoutException ex) {
+            assertFalse(ex.isIdle());
+            assertEquals(200, ex.getTimeout(TimeUnit.MILLISECONDS));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void executableDestroysIdleProcess() throws Exception
+    {
+        ProcessExecutable script = this.createExecutable();
+        script.setIdleTimeout(200, TimeUnit.MILLISECONDS);
+
+        try {
+            script.doExecute(this.start("echo start; sleep 30"));
+            fail("Expected a ProcessTimeoutException.");
+        } catch (ProcessTimeoutException ex) {
+            assertTrue(ex.isIdle());
+        }
+    }
+
+    @Test
+    public void executableKeepsProcessWithOutputAlive() throws Exception
+    {
+        ProcessExecutable script = this.createExecutable();
+        script.setIdleTimeout(1, TimeUnit.SECONDS);
+        script.setTimeout(2, TimeUnit.SECONDS);
+
+        try {
+            script.doExecute(this.start("while true; do echo tick; sleep 0.05; done"));
+            fail("Expected a ProcessTimeoutException.");
+        } catch (ProcessTimeoutException ex) {
+            assertFalse(ex.isIdle());
+        }
+    }
+
+    @Test
+    public void executableReturnsExitCodeWithinTimeout() throws Exception
+    {
+        ProcessExecutable script = this.createExecutable();
+        script.setTimeout(10, TimeUnit.SECONDS);
+        script.setIdleTimeout(10, TimeUnit.SECONDS);
+
+        assertEquals(2, script.doExecute(this.start("echo done; exit 2")));
+    }
+
+    @Test
+    public void executableDestroysProcessWhenInterrupted() throws Exception
+    {
+        final ReportFileExecutable script = new ReportFileExecutable(ExecutableUtil.findExecutableOnUsersPath("sh"));
+        final Process proc = this.start("exec >&- 2>&-; sleep 30");
+        final boolean[] interrupted = {false};
+
+        Thread thread = new Thread() {
+            public void run() {
+                script.doExecute(proc);
+                interrupted[0] = Thread.currentThread().isInterrupted();
+            }
+        };
+        thread.start();
+        Thread.sleep(200);
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse(thread.isAlive());
+        assertTrue(interrupted[0]);
+        assertTrue(proc.waitFor(10, TimeUnit.SECONDS));
+    }
+
+    private Process start(String command) throws IOException
+    {
+        return new ProcessBuilder("sh", "-c", command).start();
+    }
+
+    private ProcessExecutable createExecutable()
+    {
+        return new ProcessExecutable(ExecutableUtil.findExecutableOnUsersPath("sh")) {
+            protected int execute(Process proc) {
+                try {
+                    InputStream stream = this.monitor(proc.getInputStream());
+                    byte[] buffer = new byte[1024];
+                    while (stream.read(buffer) != -1) {
+                    }
+                    return proc.waitFor();
+                } catch (IOException ex) {
+                } catch (InterruptedException ex) {
+                }
+                return ERROR_EXIT_CODE;
+            }
+        };
+    }
+}
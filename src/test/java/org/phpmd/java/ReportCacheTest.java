@@ -0,0 +1,36 @@
+package org.phpmd.java;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class ReportCacheTest {
+
+    @Test
+    public void cacheLoadsViolationsWithCanonicalFileName() throws Exception
+    {
+        File directory = Files.createTempDirectory("cache").toFile().getCanonicalFile();
+        File file = new File(directory, "foo.php");
+        Files.write(file.toPath(), "<?php\n".getBytes("UTF-8"));
+        File link = new File(directory, "link.php");
+        Files.createSymbolicLink(link.toPath(), file.toPath());
+
+        RuleViolation violation = new RuleViolation();
+        violation.setFileName("/tmp/other/foo.php");
+        violation.setRule("UnusedPrivateMethod");
+        List<RuleViolation> violations = new ArrayList<RuleViolation>();
+        violations.add(violation);
+
+        ReportCache cache = new ReportCache(new File(directory, "cache"));
+        cache.store("0123456789abcdef", violations);
+
+        assertEquals(file.getPath(), cache.load("0123456789abcdef", link).get(0).getFileName());
+    }
+}
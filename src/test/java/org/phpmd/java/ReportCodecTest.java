@@ -0,0 +1,153 @@
+package org.phpmd.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class ReportCodecTest {
+
+    private static final String RESOURCE_PATH = "_reports/";
+
+    @Test
+    public void codecRestoresAllViolations() throws Exception
+    {
+        Report report = this.decode(this.encode(this.getReport()));
+
+        assertEquals(3, report.getRuleViolations().size());
+    }
+
+    @Test
+    public void codecRestoresViolationProperties() throws Exception
+    {
+        RuleViolation expected = this.getReport().getRuleViolations().get(2);
+        RuleViolation actual = this.decode(this.encode(this.getReport())).getRuleViolations().get(2);
+
+        assertEquals(expected.getFileName(), actual.getFileName());
+        assertEquals(expected.getPackageName(), actual.getPackageName());
+        assertEquals(expected.getClassName(), actual.getClassName());
+        assertEquals(expected.getFunctionName(), actual.getFunctionName());
+        assertEquals(expected.getMethodName(), actual.getMethodName());
+        assertEquals(expected.getBeginLine(), actual.getBeginLine());
+        assertEquals(expected.getEndLine(), actual.getEndLine());
+        assertEquals(expected.getRule(), actual.getRule());
+        assertEquals(expected.getRuleSet(), actual.getRuleSet());
+        assertEquals(expected.getExternalInfoUrl(), actual.getExternalInfoUrl());
+        assertEquals(1, actual.getPriority());
+        assertEquals(expected.getDescription(), actual.getDescription());
+    }
+
+    @Test
+    public void codecRestoresNullProperties() throws Exception
+    {
+        Report report = new Report();
+        report.addRuleViolation(new RuleViolation());
+
+        RuleViolation actual = this.decode(this.encode(report)).getRuleViolations().get(0);
+
+        assertNull(actual.getFileName());
+        assertNull(actual.getDescription());
+    }
+
+    @Test
+    public void codecRestoresStringOfMaximumLength() throws Exception
+    {
+        Report report = new Report();
+        report.addRuleViolation(this.getViolation(1 << 20));
+
+        assertEquals(1 << 20, this.decode(this.encode(report)).getRuleViolations().get(0).getDescription().length());
+    }
+
+    @Test
+    public void codecRejectsTooLongStringBeforeWriting() throws Exception
+    {
+        Report report = new Report();
+        report.addRuleViolation(this.getViolation((1 << 20) + 1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            new ReportCodec().write(report, out);
+            fail("Expected an IOException for a too long string.");
+        } catch (IOException ex) {
+            assertEquals(0, out.size());
+        }
+    }
+
+    @Test(expected=IOException.class)
+    public void codecThrowsExceptionForInvalidStream() throws Exception
+    {
+        this.decode("<pmd />".getBytes("UTF-8"));
+    }
+
+    @Test(expected=IOException.class)
+    public void codecThrowsExceptionForNegativeTableSize() throws Exception
+    {
+        this.decode(new byte[] {'P', 'M', 'D', 'R', 2, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f});
+    }
+
+    @Test(expected=IOException.class)
+    public void codecThrowsExceptionForHugeStringLength() throws Exception
+    {
+        this.decode(new byte[] {'P', 'M', 'D', 'R', 2, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07});
+    }
+
+    @Test(expected=IOException.class)
+    public void codecThrowsExceptionForNegativeStringReference() throws Exception
+    {
+        this.decode(new byte[] {'P', 'M', 'D', 'R', 2, 0, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f});
+    }
+
+    @Test(expected=IOException.class)
+    public void codecThrowsExceptionForCorruptedReport() throws Exception
+    {
+        byte[] bytes = this.encode(this.getReport());
+        for (int i = 5; i < bytes.length; ++i) {
+            bytes[i] = (byte) 0xff;
+        }
+        this.decode(bytes);
+    }
+
+    @Test(expected=IOException.class)
+    public void codecThrowsExceptionForTruncatedReport() throws Exception
+    {
+        byte[] bytes = this.encode(this.getReport());
+        this.decode(Arrays.copyOf(bytes, bytes.length / 2));
+    }
+
+    private RuleViolation getViolation(int descriptionLength)
+    {
+        char[] description = new char[descriptionLength];
+        Arrays.fill(description, 'x');
+
+        RuleViolation violation = new RuleViolation();
+        violation.setFileName("/tmp/foo.php");
+        violation.setDescription(new String(description));
+        return violation;
+    }
+
+    private byte[] encode(Report report) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ReportCodec().write(report, out);
+
+        return out.toByteArray();
+    }
+
+    private Report decode(byte[] bytes) throws Exception
+    {
+        return new ReportCodec().read(new ByteArrayInputStream(bytes));
+    }
+
+    private Report getReport() throws Exception
+    {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(RESOURCE_PATH + "report.xml");
+        return new ReportParser().parse(in);
+    }
+}
@@ -0,0 +1,103 @@
+package org.phpmd.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class ReportParserTest {
+
+    private static final String RESOURCE_PATH = "_reports/";
+
+    @Test
+    public void parserReturnsEmptyReportForEmptyStream() throws Exception
+    {
+        Report report = new ReportParser().parse(new ByteArrayInputStream(new byte[0]));
+
+        assertEquals(0, report.getRuleViolations().size());
+    }
+
+    @Test
+    public void parserReturnsAllViolationsOfAllFiles() throws Exception
+    {
+        Report report = new ReportParser().parse(this.getResource("report.xml"));
+
+        assertEquals(3, report.getRuleViolations().size());
+    }
+
+    @Test
+    public void parserSetsExpectedViolationProperties() throws Exception
+    {
+        Report report = new ReportParser().parse(this.getResource("report.xml"));
+        RuleViolation violation = report.getRuleViolations().get(1);
+
+        assertEquals("/tmp/unusedcode.php", violation.getFileName());
+        assertEquals("+global", violation.getPackageName());
+        assertEquals("Foo", violation.getClassName());
+        assertEquals("bar", violation.getMethodName());
+        assertEquals("", violation.getFunctionName());
+        assertEquals(2, violation.getBeginLine());
+        assertEquals(2, violation.getEndLine());
+        assertEquals("UnusedFormalParameter", violation.getRule());
+        assertEquals("Unused Code Rules", violation.getRuleSet());
+        assertEquals("http://phpmd.org/rules/unusedcode.html#unusedformalparameter", violation.getExternalInfoUrl());
+        assertEquals(3, violation.getPriority());
+        assertEquals("Avoid unused parameters such as '$param2'.", violation.getDescription());
+    }
+
+    @Test
+    public void parserEmitsViolationsToListener() throws Exception
+    {
+        final List<String> rules = new ArrayList<String>();
+        new ReportParser().parse(this.getResource("report.xml"), new ViolationListener() {
+            public void ruleViolation(RuleViolation violation) {
+                rules.add(violation.getRule());
+            }
+        });
+
+        assertEquals(3, rules.size());
+        assertEquals("UnusedPrivateMethod", rules.get(2));
+    }
+
+    @Test
+    public void parserKeepsViolationsReadBeforeMalformedXml() throws Exception
+    {
+        Report report = new ReportParser().parse(this.getResource("broken.xml"));
+
+        assertEquals(1, report.getRuleViolations().size());
+    }
+
+    @Test
+    public void parserReadsViolationsFromReportFile() throws Exception
+    {
+        File file = new File(getClass().getClassLoader().getResource(RESOURCE_PATH + "report.xml").toURI());
+        Report report = new ReportFile(file).parse();
+
+        assertEquals(3, report.getRuleViolations().size());
+        assertEquals("UnusedPrivateMethod", report.getRuleViolations().get(2).getRule());
+    }
+
+    @Test
+    public void parserReadsReportFileAcrossMappedWindows() throws Exception
+    {
+        File file = new File(getClass().getClassLoader().getResource(RESOURCE_PATH + "report.xml").toURI());
+        InputStream stream = new MappedFileInputStream(file, 7);
+        try {
+            assertEquals(3, new ReportParser().parse(stream).getRuleViolations().size());
+        } finally {
+            stream.close();
+        }
+    }
+
+    private InputStream getResource(String name) throws Exception
+    {
+        return getClass().getClassLoader().getResourceAsStream(RESOURCE_PATH + name);
+    }
+}
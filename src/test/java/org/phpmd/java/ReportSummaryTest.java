@@ -0,0 +1,130 @@
+package org.phpmd.java;
+
+import de.xplib.execution.ValidationException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class ReportSummaryTest {
+
+    private static final String RESOURCE_PATH = "_reports/";
+
+    @Test
+    public void summaryCountsAllViolations() throws Exception
+    {
+        assertEquals(3, this.getSummary().getViolations());
+    }
+
+    @Test
+    public void summaryCountsViolationsByFile() throws Exception
+    {
+        Map<String, Integer> counts = this.getSummary().countByFile();
+
+        assertEquals(Arrays.asList("/tmp/complexity.php", "/tmp/unusedcode.php"), Arrays.asList(counts.keySet().toArray()));
+        assertEquals(Integer.valueOf(2), counts.get("/tmp/unusedcode.php"));
+    }
+
+    @Test
+    public void summaryCountsViolationsByRule() throws Exception
+    {
+        Map<String, Integer> counts = this.getSummary().countByRule();
+
+        assertEquals(3, counts.size());
+        assertEquals(Integer.valueOf(1), counts.get("UnusedPrivateMethod"));
+    }
+
+    @Test
+    public void summaryIgnoresViolationsWithoutPackage() throws Exception
+    {
+        Map<String, Integer> counts = this.getSummary().countByPackage();
+
+        assertEquals(1, counts.size());
+        assertEquals(Integer.valueOf(2), counts.get("+global"));
+    }
+
+    @Test
+    public void summaryCountsViolationsByPriority() throws Exception
+    {
+        assertArrayEquals(new int[] {0, 1, 0, 2, 0, 0}, this.getSummary().countByPriority());
+    }
+
+    @Test
+    public void summaryReturnsTopFilesInDescendingOrder() throws Exception
+    {
+        ReportSummary summary = new ReportSummary();
+        summary.add("/tmp/a.php", "Foo", "", 3);
+        summary.add("/tmp/b.php", "Foo", "", 3);
+        summary.add("/tmp/c.php", "Foo", "", 3);
+        summary.add("/tmp/c.php", "Foo", "", 3);
+        summary.add("/tmp/b.php", "Foo", "", 3);
+        summary.add("/tmp/c.php", "Foo", "", 3);
+
+        Map<String, Integer> top = summary.getTopFiles(2);
+
+        assertEquals(Arrays.asList("/tmp/c.php", "/tmp/b.php"), Arrays.asList(top.keySet().toArray()));
+        assertEquals(Integer.valueOf(3), top.get("/tmp/c.php"));
+    }
+
+    @Test
+    public void summaryReturnsAllEntriesForHugeCount() throws Exception
+    {
+        ReportSummary summary = this.getSummary();
+
+        Map<String, Integer> top = summary.getTopRules(Integer.MAX_VALUE);
+
+        assertEquals(summary.getTopRules(top.size()), top);
+        assertTrue(top.size() > 1);
+    }
+
+    @Test(expected=ValidationException.class)
+    public void summaryRejectsNonPositiveCount() throws Exception
+    {
+        new ReportSummary().getTopFiles(0);
+    }
+
+    @Test
+    public void summaryPrefersFirstOccurrenceForEqualCounts() throws Exception
+    {
+        ReportSummary summary = this.getSummary();
+
+        assertEquals(Arrays.asList("CyclomaticComplexity"), Arrays.asList(summary.getTopRules(1).keySet().toArray()));
+    }
+
+    @Test
+    public void summaryCountsViolationsPassedAsListener() throws Exception
+    {
+        ReportSummary summary = new ReportSummary();
+        new ReportParser().parse(this.getReportStream(), summary);
+
+        assertEquals(this.getSummary().countByRule(), summary.countByRule());
+    }
+
+    @Test
+    public void summaryStopsAtMalformedReport() throws Exception
+    {
+        ReportSummary summary = new ReportSummary();
+        new ReportParser().summarize(new ByteArrayInputStream("<pmd><file".getBytes("UTF-8")), summary);
+
+        assertEquals(0, summary.getViolations());
+    }
+
+    private ReportSummary getSummary() throws Exception
+    {
+        ReportSummary summary = new ReportSummary();
+        new ReportParser().summarize(this.getReportStream(), summary);
+
+        return summary;
+    }
+
+    private InputStream getReportStream() throws Exception
+    {
+        return getClass().getClassLoader().getResourceAsStream(RESOURCE_PATH + "report.xml");
+    }
+}
@@ -0,0 +1,182 @@
+package org.phpmd.java;
+
+import java.io.InputStream;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class ReportTest {
+
+    private static final String RESOURCE_PATH = "_reports/";
+
+    @Test
+    public void reportReturnsViolationsByFile() throws Exception
+    {
+        Report report = this.getReport();
+
+        assertEquals(2, report.getRuleViolationsByFile("/tmp/unusedcode.php").size());
+    }
+
+    @Test
+    public void reportReturnsEmptyListForUnknownFile() throws Exception
+    {
+        Report report = this.getReport();
+
+        assertEquals(0, report.getRuleViolationsByFile("/tmp/unknown.php").size());
+    }
+
+    @Test
+    public void reportReturnsViolationsByRule() throws Exception
+    {
+        Report report = this.getReport();
+
+        assertEquals(1, report.getRuleViolationsByRule("UnusedPrivateMethod").size());
+    }
+
+    @Test
+    public void reportSharesEqualNamesOfDifferentViolations() throws Exception
+    {
+        Report report = new Report();
+        report.addRuleViolation(this.createViolation(new String("/tmp/foo.php"), new String("Foo")));
+        report.addRuleViolation(this.createViolation(new String("/tmp/foo.php"), new String("Foo")));
+
+        RuleViolation first = report.getRuleViolations().get(0);
+        RuleViolation second = report.getRuleViolations().get(1);
+
+        assertSame(first.getFileName(), second.getFileName());
+        assertSame(first.getClassName(), second.getClassName());
+    }
+
+    @Test
+    public void reportKeepsNullNamesOfViolation() throws Exception
+    {
+        Report report = new Report();
+        report.addRuleViolation(this.createViolation("/tmp/foo.php", null));
+
+        assertEquals("/tmp/foo.php", report.getRuleViolations().get(0).getFileName());
+        assertNull(report.getRuleViolations().get(0).getClassName());
+        assertNull(report.getRuleViolations().get(0).getPackageName());
+    }
+
+    @Test
+    public void reportRewritesViolationsOfMergedReportInPlace() throws Exception
+    {
+        Report target = new Report();
+        target.addRuleViolation(this.createViolation("/tmp/foo.php", "Foo"));
+
+        Report source = new Report();
+        RuleViolation violation = this.createViolation(new String("/tmp/foo.php"), "Bar");
+        source.addRuleViolation(violation);
+        target.merge(source);
+
+        assertSame(violation, target.getRuleViolations().get(1));
+        assertSame(target.getRuleViolations().get(0).getFileName(), violation.getFileName());
+    }
+
+    @Test
+    public void reportReturnsViolationsByMethod() throws Exception
+    {
+        Report report = this.getReport();
+
+        assertEquals("UnusedFormalParameter", report.getIndex().getByMethod("Foo", "bar").get(0).getRule());
+    }
+
+    @Test
+    public void reportReturnsViolationsOverlappingLineRange() throws Exception
+    {
+        Report report = this.getReport();
+
+        assertEquals(1, report.getRuleViolations("/tmp/complexity.php", 40, 50).size());
+        assertEquals(0, report.getRuleViolations("/tmp/unusedcode.php", 3, 6).size());
+        assertEquals(2, report.getRuleViolations("/tmp/unusedcode.php", 1, 7).size());
+    }
+
+    @Test
+    public void reportCountsViolationsPerPackage() throws Exception
+    {
+        Report report = this.getReport();
+
+        assertEquals(Integer.valueOf(2), report.getIndex().countByPackage().get("+global"));
+    }
+
+    @Test
+    public void reportIndexIncludesViolationsAddedAfterQuery() throws Exception
+    {
+        Report report = this.getReport();
+        report.getRuleViolationsByRule("UnusedPrivateMethod");
+
+        RuleViolation violation = new RuleViolation();
+        violation.setRule("UnusedPrivateMethod");
+        report.addRuleViolation(violation);
+
+        assertEquals(2, report.getRuleViolationsByRule("UnusedPrivateMethod").size());
+    }
+
+    @Test
+    public void reportFiltersViolationsByMinimumPriority() throws Exception
+    {
+        Report report = this.getReport();
+
+        assertEquals(1, report.filter(new Priority(1)).getRuleViolations().size());
+        assertEquals(1, report.filter(2).getRuleViolations().size());
+        assertEquals(3, report.filter(3).getRuleViolations().size());
+    }
+
+    @Test
+    public void reportReturnsViolationsUnaffectedByLaterChanges() throws Exception
+    {
+        Report report = this.getReport();
+
+        List<RuleViolation> violations = report.getRuleViolations();
+        for (RuleViolation violation : violations) {
+            report.addRuleViolation(violation);
+        }
+        report.removeRuleViolations("/tmp/unusedcode.php");
+
+        assertEquals(3, violations.size());
+        assertEquals(2, report.getRuleViolations().size());
+    }
+
+    @Test
+    public void reportRemovesViolationsOfFile() throws Exception
+    {
+        Report report = this.getReport();
+
+        assertEquals(2, report.removeRuleViolations("/tmp/unusedcode.php").size());
+        assertEquals(1, report.getRuleViolations().size());
+        assertEquals(0, report.getRuleViolationsByFile("/tmp/unusedcode.php").size());
+    }
+
+    @Test
+    public void reportMergesTimedOutFiles() throws Exception
+    {
+        Report timedOut = new Report();
+        timedOut.addTimedOutFile("/tmp/slow.php");
+
+        Report report = this.getReport();
+        report.merge(timedOut);
+
+        assertEquals(3, report.getRuleViolations().size());
+        assertEquals("/tmp/slow.php", report.getTimedOutFiles().get(0));
+        assertEquals(1, report.filter(1).getTimedOutFiles().size());
+    }
+
+    private RuleViolation createViolation(String fileName, String className)
+    {
+        RuleViolation violation = new RuleViolation();
+        violation.setFileName(fileName);
+        violation.setClassName(className);
+
+        return violation;
+    }
+
+    private Report getReport() throws Exception
+    {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(RESOURCE_PATH + "report.xml");
+        return new ReportParser().parse(in);
+    }
+}
@@ -0,0 +1,131 @@
+package org.phpmd.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class ReportWriterTest {
+
+    private static final String RESOURCE_PATH = "_reports/";
+
+    @Test
+    public void jsonWriterGroupsViolationsByFile() throws Exception
+    {
+        Report report = new Report();
+        report.addRuleViolation(this.createViolation("/tmp/a.php", "FooRule", 2, "Say \"foo\"."));
+        report.addRuleViolation(this.createViolation("/tmp/a.php", "BarRule", 7, "Bar."));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportWriter writer = new JsonReportWriter(out);
+        writer.write(report);
+        writer.close();
+
+        assertEquals(
+                "{\"files\":[\n"
+                + "{\"file\":\"/tmp/a.php\",\"violations\":["
+                + "{\"beginLine\":2,\"endLine\":3,\"rule\":\"FooRule\",\"priority\":3,\"description\":\"Say \\\"foo\\\".\"},"
+                + "{\"beginLine\":7,\"endLine\":8,\"rule\":\"BarRule\",\"priority\":3,\"description\":\"Bar.\"}]}"
+                + "\n]}\n",
+                out.toString("UTF-8")
+        );
+    }
+
+    @Test
+    public void jsonWriterWritesEmptyDocumentForNoViolations() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonReportWriter(out).close();
+
+        assertEquals("{\"files\":[\n]}\n", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void checkstyleWriterWritesOneFileElementPerFile() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportWriter writer = new CheckstyleReportWriter(out);
+        new ReportParser().parse(this.getReportStream(), writer);
+        writer.close();
+
+        Document document = this.parseXml(out.toByteArray());
+
+        assertEquals(2, document.getElementsByTagName("file").getLength());
+        assertEquals(3, document.getElementsByTagName("error").getLength());
+    }
+
+    @Test
+    public void checkstyleWriterMapsPriorityToSeverity() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportWriter writer = new CheckstyleReportWriter(out);
+        new ReportParser().parse(this.getReportStream(), writer);
+        writer.close();
+
+        Document document = this.parseXml(out.toByteArray());
+
+        assertEquals("warning", document.getElementsByTagName("error").item(0).getAttributes().getNamedItem("severity").getNodeValue());
+        assertEquals("error", document.getElementsByTagName("error").item(2).getAttributes().getNamedItem("severity").getNodeValue());
+    }
+
+    @Test
+    public void sarifWriterWritesRuleDescriptorsAfterResults() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportWriter writer = new SarifReportWriter(out);
+        new ReportParser().parse(this.getReportStream(), writer);
+        writer.close();
+
+        String sarif = out.toString("UTF-8");
+
+        assertTrue(sarif.contains("\"ruleId\":\"UnusedPrivateMethod\",\"ruleIndex\":2,\"level\":\"error\""));
+        assertTrue(sarif.contains("\"uri\":\"file:///tmp/complexity.php\""));
+        assertTrue(sarif.indexOf("\"rules\":[") > sarif.lastIndexOf("\"ruleId\""));
+        assertTrue(sarif.endsWith("}]}\n"));
+    }
+
+    @Test
+    public void sarifWriterWritesLocationsRelativeToBaseDirectory() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportWriter writer = new SarifReportWriter(out, new File("/tmp"));
+        writer.ruleViolation(this.createViolation("/tmp/src/my file.php", "FooRule", 2, "Foo."));
+        writer.close();
+
+        String sarif = out.toString("UTF-8");
+
+        assertTrue(sarif.contains("\"uri\":\"src/my%20file.php\",\"uriBaseId\":\"SRCROOT\""));
+        assertTrue(sarif.contains("\"originalUriBaseIds\":{\"SRCROOT\":{\"uri\":\"file:///tmp/\"}}"));
+    }
+
+    private RuleViolation createViolation(String fileName, String rule, int line, String description)
+    {
+        RuleViolation violation = new RuleViolation();
+        violation.setFileName(fileName);
+        violation.setRule(rule);
+        violation.setBeginLine(line);
+        violation.setEndLine(line + 1);
+        violation.setPriority(3);
+        violation.setDescription(description);
+
+        return violation;
+    }
+
+    private Document parseXml(byte[] xml) throws Exception
+    {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+    }
+
+    private InputStream getReportStream() throws Exception
+    {
+        return getClass().getClassLoader().getResourceAsStream(RESOURCE_PATH + "report.xml");
+    }
+}
@@ -0,0 +1,60 @@
+package org.phpmd.java;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class RuleSetsTest {
+
+    @Test
+    public void splitTreatsCountBelowOneAsOneGroup() throws Exception
+    {
+        RuleSets ruleSets = this.createRuleSets("codesize", "unusedcode", "naming");
+
+        assertEquals(1, ruleSets.split(0).size());
+        assertEquals(1, ruleSets.split(-1).size());
+        assertEquals("codesize,unusedcode,naming", ruleSets.split(0).get(0).ruleSetsToString());
+    }
+
+    @Test
+    public void splitCreatesNoEmptyGroupsForCountAboveSize() throws Exception
+    {
+        List<RuleSets> groups = this.createRuleSets("codesize", "unusedcode").split(5);
+
+        assertEquals(2, groups.size());
+        assertEquals("codesize", groups.get(0).ruleSetsToString());
+        assertEquals("unusedcode", groups.get(1).ruleSetsToString());
+    }
+
+    @Test
+    public void splitKeepsRuleSetOrderInBalancedGroups() throws Exception
+    {
+        List<RuleSets> groups = this.createRuleSets("codesize", "unusedcode", "naming", "design", "controversial").split(2);
+
+        assertEquals(2, groups.size());
+        assertEquals("codesize,unusedcode,naming", groups.get(0).ruleSetsToString());
+        assertEquals("design,controversial", groups.get(1).ruleSetsToString());
+    }
+
+    @Test
+    public void splitReturnsOneGroupForEmptyRuleSets() throws Exception
+    {
+        List<RuleSets> groups = new RuleSets().split(3);
+
+        assertEquals(1, groups.size());
+        assertEquals(0, groups.get(0).getRuleSets().size());
+    }
+
+    private RuleSets createRuleSets(String... names)
+    {
+        RuleSets ruleSets = new RuleSets();
+        for (String name : names) {
+            ruleSets.add(new RuleSet(name));
+        }
+        return ruleSets;
+    }
+}
@@ -0,0 +1,42 @@
+package org.phpmd.java;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class StringPoolTest {
+
+    @Test
+    public void poolReturnsCanonicalInstanceForEqualStrings() throws Exception
+    {
+        StringPool pool = new StringPool();
+        String first = new String("Foo");
+        String second = new String("Foo");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void poolKeepsDifferentStrings() throws Exception
+    {
+        StringPool pool = new StringPool();
+        pool.intern("Foo");
+        pool.intern("Bar");
+
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void poolReturnsNullForNull() throws Exception
+    {
+        StringPool pool = new StringPool();
+
+        assertNull(pool.intern(null));
+        assertEquals(0, pool.size());
+    }
+}
@@ -0,0 +1,155 @@
+package org.phpmd.java;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author manu
+ */
+public class UnifiedDiffTest {
+
+    private static final String DIFF =
+            "diff --git a/src/Foo.php b/src/Foo.php\n"
+            + "--- a/src/Foo.php\n"
+            + "+++ b/src/Foo.php\n"
+            + "@@ -3,0 +4,2 @@ class Foo\n"
+            + "+    public $bar;\n"
+            + "+    public $baz;\n"
+            + "@@ -20,3 +22,0 @@ class Foo\n"
+            + "-    }\n"
+            + "-\n"
+            + "-    // unused\n"
+            + "diff --git a/src/Bar.php b/src/Bar.php\n"
+            + "--- a/src/Bar.php\n"
+            + "+++ /dev/null\n"
+            + "@@ -1,3 +0,0 @@\n";
+
+    private static final File ROOT = new File("/tmp/project");
+
+    @Test
+    public void diffIgnoresRemovedFiles() throws Exception
+    {
+        UnifiedDiff diff = UnifiedDiff.parse(new StringReader(DIFF), ROOT);
+
+        assertEquals(1, diff.getChangedFiles().size());
+        assertNull(diff.getChangedLines(new File(ROOT, "src/Bar.php")));
+    }
+
+    @Test
+    public void diffMarksAddedLinesAsChanged() throws Exception
+    {
+        LineRangeIndex lines = this.getChangedLines();
+
+        assertTrue(lines.overlaps(5, 5));
+        assertFalse(lines.overlaps(1, 3));
+        assertFalse(lines.overlaps(6, 21));
+    }
+
+    @Test
+    public void diffMarksLineBeforeRemovalAsChanged() throws Exception
+    {
+        LineRangeIndex lines = this.getChangedLines();
+
+        assertTrue(lines.overlaps(10, 22));
+        assertFalse(lines.overlaps(23, 30));
+    }
+
+    @Test
+    public void diffDoesNotTakeHunkLinesAsFileHeaders() throws Exception
+    {
+        String diff = "--- a/src/Foo.php\n"
+                + "+++ b/src/Foo.php\n"
+                + "@@ -7,2 +7,2 @@\n"
+                + "--- $i;\n"
+                + "+++ $i;\n"
+                + " }\n"
+                + "--- a/src/Bar.php\n"
+                + "+++ b/src/Bar.php\n"
+                + "@@ -1 +1 @@\n"
+                + "-<?php\n"
+                + "+<?php \n";
+
+        UnifiedDiff result = UnifiedDiff.parse(new StringReader(diff), ROOT);
+
+        assertEquals(2, result.getChangedFiles().size());
+        assertNull(result.getChangedLines(new File(ROOT, "$i;")));
+        assertTrue(result.getChangedLines(new File(ROOT, "src/Foo.php")).overlaps(7, 8));
+        assertTrue(result.getChangedLines(new File(ROOT, "src/Bar.php")).overlaps(1, 1));
+    }
+
+    @Test
+    public void diffUnquotesFileNamesWithSpecialCharacters() throws Exception
+    {
+        String diff = "--- \"a/src/f\\303\\244\\too.php\"\n"
+                + "+++ \"b/src/f\\303\\244\\too.php\"\n"
+                + "@@ -1 +1 @@\n"
+                + "-<?php\n"
+                + "+<?php \n";
+
+        UnifiedDiff result = UnifiedDiff.parse(new StringReader(diff), ROOT);
+
+        assertNotNull(result.getChangedLines(new File(ROOT, "src/f\u00e4\too.php")));
+    }
+
+    @Test
+    public void diffFromGitIgnoresMnemonicPrefixes() throws Exception
+    {
+        this.assertGitDiffFindsChangedLine("diff.mnemonicPrefix", "Foo.php");
+    }
+
+    @Test
+    public void diffFromGitIgnoresDisabledPrefixes() throws Exception
+    {
+        this.assertGitDiffFindsChangedLine("diff.noprefix", "b/Foo.php");
+    }
+
+    private void assertGitDiffFindsChangedLine(String option, String fileName) throws Exception
+    {
+        File repository = File.createTempFile("repo_", ".temp");
+        repository.delete();
+        new File(repository, fileName).getParentFile().mkdirs();
+
+        this.git(repository, "init", "-q");
+        this.write(new File(repository, fileName), "<?php\n");
+        this.git(repository, "add", fileName);
+        this.git(repository, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "init");
+        this.git(repository, "config", option, "true");
+        this.write(new File(repository, fileName), "<?php\nclass Foo {}\n");
+
+        LineRangeIndex lines = UnifiedDiff.fromGit(repository, "HEAD").getChangedLines(new File(repository, fileName));
+
+        assertNotNull(lines);
+        assertTrue(lines.overlaps(2, 2));
+    }
+
+    private void git(File directory, String... arguments) throws Exception
+    {
+        List<String> command = new ArrayList<String>();
+        command.add("git");
+        Collections.addAll(command, arguments);
+
+        Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+        StreamDrainer.drain(process.getInputStream());
+        assertEquals(0, process.waitFor());
+    }
+
+    private void write(File file, String content) throws Exception
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private LineRangeIndex getChangedLines() throws Exception
+    {
+        UnifiedDiff diff = UnifiedDiff.parse(new StringReader(DIFF), ROOT);
+        return diff.getChangedLines(new File(ROOT, "src/Foo.php"));
+    }
+}